@@ -0,0 +1,151 @@
+import ants.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.TreeSet;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Checks that ants stay within their per-operation allocation budgets. A
+ * scripted game is recorded for each ant, and every log is then replayed into
+ * fresh ants while counting the bytes allocated by each getAction, send and
+ * receive call. The replays are warmed up first, so the numbers reflect
+ * JIT-compiled code. If the average of any operation is over its budget, or
+ * a replay doesn't make the moves that were recorded, the check fails.
+ *
+ * The budgets and the scripted game are read from a properties file. Keys
+ * of the form Ant.operation give the budget in bytes per call, and world,
+ * seed, ticks and ants describe the game.
+ *
+ * Usage: AllocationBudget budgets.properties
+ */
+public class AllocationBudget{
+  /**
+   * The operations that have budgets.
+   */
+  private static final String[] OPERATIONS = {"getAction", "send", "receive"};
+
+  /**
+   * The number of untimed replays of each log before counting.
+   */
+  private static final int WARMUP_REPLAYS = 2;
+
+  /**
+   * Records a scripted game and measures the average bytes allocated per
+   * call of each operation. A replay that makes different moves than the
+   * recorded game is a different workload, so its numbers would mean
+   * nothing and the measurement is refused.
+   * @param antClass The ant to measure
+   * @param budgets The budgets file, which also describes the game
+   * @return The average bytes per getAction, send and receive
+   * @throws IllegalStateException If a replay didn't match its recording
+   */
+  static double[] measure(Class<? extends Ant> antClass, Properties budgets)
+    throws Exception{
+    String world = budgets.getProperty("world", "32x32");
+    long seed = Long.parseLong(budgets.getProperty("seed", "0"));
+    int ticks = Integer.parseInt(budgets.getProperty("ticks", "300"));
+    int ants = Integer.parseInt(budgets.getProperty("ants", "6"));
+
+    File dir = Files.createTempDirectory("ant-logs").toFile();
+    try{
+      HeadlessSimulator sim = 
+        new HeadlessSimulator(HeadlessSimulator.loadWorld(world, seed),
+                              antClass, ants, 0, seed, dir);
+      sim.run(ticks);
+      sim.closeRecordings();
+
+      long[] bytes = new long[3];
+      long[] calls = new long[3];
+      for(File log : dir.listFiles()){
+        AntReplayer replayer = new AntReplayer(log);
+        for(int i = 0; i < WARMUP_REPLAYS; i++){
+          replayer.replay(antClass.getDeclaredConstructor().newInstance());
+        }
+        AntReplayer.Result r = 
+          replayer.replay(antClass.getDeclaredConstructor().newInstance(),
+                          true);
+        if(r.mismatches > 0){
+          throw new IllegalStateException("Replay of " + log.getName() + 
+                                          " diverged: " + r);
+        }
+        bytes[0] += r.actionBytes;
+        bytes[1] += r.sendBytes;
+        bytes[2] += r.receiveBytes;
+        calls[0] += r.actions;
+        calls[1] += r.sends;
+        calls[2] += r.receives;
+      }
+
+      double[] retval = new double[3];
+      for(int i = 0; i < 3; i++){
+        retval[i] = calls[i] == 0 ? 0 : (double)bytes[i] / calls[i];
+      }
+      return retval;
+    }finally{
+      for(File log : dir.listFiles()){
+        log.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * Runs the check. Exits with status 1 if any budget is exceeded.
+   */
+  public static void main(String[] args) throws Exception{
+    if(args.length < 1){
+      System.err.println("Usage: AllocationBudget budgets.properties");
+      System.exit(2);
+    }
+    Properties budgets = new Properties();
+    InputStream in = new FileInputStream(args[0]);
+    try{
+      budgets.load(in);
+    }finally{
+      in.close();
+    }
+
+    // Every key of the form Ant.operation names an ant to check.
+    TreeSet<String> antNames = new TreeSet<String>();
+    for(String key : budgets.stringPropertyNames()){
+      for(String op : OPERATIONS){
+        if(key.endsWith("." + op)){
+          antNames.add(key.substring(0, key.length() - op.length() - 1));
+        }
+      }
+    }
+
+    int failures = 0;
+    for(String name : antNames){
+      double[] perCall;
+      try{
+        perCall = measure(HeadlessSimulator.loadAnt(name), budgets);
+      }catch(IllegalStateException e){
+        failures++;
+        System.out.println(String.format(Locale.ROOT, "%-12s %s", name,
+                                         e.getMessage()));
+        continue;
+      }
+      for(int i = 0; i < OPERATIONS.length; i++){
+        String budget = budgets.getProperty(name + "." + OPERATIONS[i]);
+        if(budget == null) continue;
+        boolean over = perCall[i] > Double.parseDouble(budget);
+        if(over) failures++;
+        System.out.println(String.format(Locale.ROOT, 
+                           "%-12s %-10s %14.0f bytes/call  budget %10s  %s",
+                           name, OPERATIONS[i], perCall[i], budget,
+                           over ? "OVER BUDGET" : "ok"));
+      }
+    }
+
+    if(failures > 0){
+      System.out.println(failures + 
+                         " operation(s) over their budget or not replayable");
+      System.exit(1);
+    }
+  }
+}
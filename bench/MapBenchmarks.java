@@ -0,0 +1,367 @@
+import ants.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Microbenchmarks for WorldMap and the MappingAnt planners. Every operation is
+ * run over each combination of map size, wall density and food density.
+ *
+ * Usage: MapBenchmarks [-sizes 64,256] [-walls 0,0.16] [-food 0.05]
+ *                      [-warmup 2] [-iterations 3] [-time 100]
+ *                      [-filter name] [-json file]
+ */
+public class MapBenchmarks{
+  /**
+   * The seed used to build the maps, so every run benchmarks the same maps.
+   */
+  private static final long SEED = 42;
+
+  /**
+   * Builds a fully explored map. Positions from -size/2 to size/2 - 1 are
+   * known, each one is a wall with a chance of walls, and holds food with a
+   * chance of food. The anthill is never a wall.
+   * @param size The width and height of the known area
+   * @param walls The chance of a position being a wall
+   * @param food The chance of a position holding food
+   * @param rand The random number generator
+   * @return The new map
+   */
+  static WorldMap buildMap(int size, double walls, double food, Random rand){
+    WorldMap map = new WorldMap(size);
+    for(int y = -size/2; y < size - size/2; y++){
+      for(int x = -size/2; x < size - size/2; x++){
+        boolean wall = (x != 0 || y != 0) && rand.nextDouble() < walls;
+        int amount = !wall && rand.nextDouble() < food ? 
+                     1 + rand.nextInt(20) : 0;
+        map.updateMap(x, y, wall, amount, 0, rand.nextInt(100));
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Makes a deep copy of a map by sending it through serializeMap.
+   * @param map The map to copy
+   * @return The copy
+   */
+  static WorldMap copy(WorldMap map) throws IOException{
+    WorldMap retval = new WorldMap(1);
+    retval.deserializeMap(new DataInputStream(
+      new ByteArrayInputStream(serialize(map))));
+    return retval;
+  }
+
+  /**
+   * Serializes a map into a byte array.
+   * @param map The map to serialize
+   * @return The serialized map
+   */
+  static byte[] serialize(WorldMap map) throws IOException{
+    ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
+    map.serializeMap(new DataOutputStream(outputBytes));
+    return outputBytes.toByteArray();
+  }
+
+  /**
+   * Finds the open position furthest from the anthill along the diagonal, so
+   * that the deliver plan has somewhere to walk from.
+   * @param map The map
+   * @param size The width and height of the known area
+   * @return The x and y of the position
+   */
+  private static int[] farPosition(WorldMap map, int size){
+    for(int d = size/2 - 1; d > 0; d--){
+      if(map.validMove(Action.HALT, d, d, false) &&
+         map.getPossibleMoves(d, d, false).length > 0){
+        return new int[]{d, d};
+      }
+    }
+    return new int[]{0, 0};
+  }
+
+  /**
+   * Returns the size of a plan, or -1 if no plan was found.
+   */
+  private static long planLength(ArrayDeque<Action> plan){
+    return plan == null ? -1 : plan.size();
+  }
+
+  /**
+   * Benchmarks every operation on a single map configuration.
+   * @param bench The harness
+   * @param filter Only operations whose name contains this are run
+   * @param size The width and height of the known area
+   * @param walls The wall density
+   * @param food The food density
+   */
+  private static void runAll(MicroBenchmark bench, String filter, 
+                             final int size, double walls, double food)
+    throws Exception{
+    String params = "size=" + size + ",walls=" + walls + ",food=" + food;
+    final WorldMap base = buildMap(size, walls, food, new Random(SEED));
+    final WorldMap other = buildMap(size, walls, food, new Random(SEED + 1));
+    final byte[] bytes = serialize(base);
+
+    if("updateMap".contains(filter)){
+      final WorldMap map = copy(base);
+      bench.measure("updateMap", params, new MicroBenchmark.Op(){
+        int i = 0;
+        public long run(){
+          int x = i % size - size/2;
+          int y = (i / size) % size - size/2;
+          map.updateMap(x, y, false, 1, 0, i++);
+          return x;
+        }
+      });
+    }
+
+    if("updateMap.growing".contains(filter)){
+      bench.measure("updateMap.growing", params, new MicroBenchmark.Op(){
+        public long run(){
+          WorldMap map = new WorldMap(5);
+          for(int y = -size/2; y < size - size/2; y++){
+            for(int x = -size/2; x < size - size/2; x++){
+              map.updateMap(x, y, false, 0, 0, 1);
+            }
+          }
+          return map.getFood(0, 0);
+        }
+      });
+    }
+
+    if("mergeInto".contains(filter)){
+      final WorldMap map = copy(base);
+      bench.measure("mergeInto", params, new MicroBenchmark.Op(){
+        public long run(){
+          map.mergeInto(other);
+          return map.getFood(1, 1);
+        }
+      });
+    }
+
+    if("mergeInto.fresh".contains(filter)){
+      bench.measure("mergeInto.fresh", params, new MicroBenchmark.Op(){
+        public long run(){
+          WorldMap map = new WorldMap(5);
+          map.mergeInto(other);
+          return map.getFood(1, 1);
+        }
+      });
+    }
+
+    if("serializeMap".contains(filter)){
+      final ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
+      final DataOutputStream dataWriter = new DataOutputStream(outputBytes);
+      bench.measure("serializeMap", params, new MicroBenchmark.Op(){
+        public long run() throws IOException{
+          outputBytes.reset();
+          base.serializeMap(dataWriter);
+          return outputBytes.size();
+        }
+      });
+    }
+
+    if("deserializeMap".contains(filter)){
+      bench.measure("deserializeMap", params, new MicroBenchmark.Op(){
+        public long run() throws IOException{
+          WorldMap map = new WorldMap(1);
+          map.deserializeMap(new DataInputStream(
+            new ByteArrayInputStream(bytes)));
+          return map.getFood(1, 1);
+        }
+      });
+    }
+
+    if("adjustTimes".contains(filter)){
+      final WorldMap map = copy(base);
+      bench.measure("adjustTimes", params, new MicroBenchmark.Op(){
+        int step = 0;
+        public long run(){
+          map.adjustTimes(step, step + 1);
+          return ++step;
+        }
+      });
+    }
+
+    if("getPossibleMoves".contains(filter)){
+      bench.measure("getPossibleMoves", params, new MicroBenchmark.Op(){
+        int i = 0;
+        public long run(){
+          int x = i % size - size/2;
+          int y = (i / size) % size - size/2;
+          i++;
+          return base.getPossibleMoves(x, y, false).length;
+        }
+      });
+      bench.measure("getPossibleMoves-packed", params, new MicroBenchmark.Op(){
+        int[] moves = new int[4];
+        int i = 0;
+        public long run(){
+          int x = i % size - size/2;
+          int y = (i / size) % size - size/2;
+          i++;
+          return base.getPossibleMoves(x, y, false, moves);
+        }
+      });
+    }
+
+    if("render".contains(filter)){
+      bench.measure("render", params, new MicroBenchmark.Op(){
+        StringBuilder out = new StringBuilder();
+        public long run() throws IOException{
+          out.setLength(0);
+          base.render(out);
+          return out.length();
+        }
+      });
+    }
+
+    final SearchGoal home = new SearchGoal(){
+      public boolean isGoal(int x, int y){
+        return x == 0 && y == 0;
+      }
+
+      public String planName(){
+        return "home";
+      }
+    };
+
+    if("flowField".contains(filter)){
+      final WorldMap map = copy(base);
+      bench.measure("flowField", params, new MicroBenchmark.Op(){
+        public long run(){
+          map.invalidateFlowField("home");
+          return map.flowField("home", home).distance(map, 1, 1);
+        }
+      });
+    }
+
+    if("flowStep".contains(filter)){
+      final WorldMap map = copy(base);
+      bench.measure("flowStep", params, new MicroBenchmark.Op(){
+        int i = 0;
+        public long run(){
+          int x = i % size - size/2;
+          int y = (i / size) % size - size/2;
+          i++;
+          return map.flowStep("home", home, x, y) == null ? 0 : 1;
+        }
+      });
+    }
+
+    // Each plan is measured with every planner the ants can use. The sweep
+    // planner keeps its search while the ant stands still, so its numbers are
+    // the cost of a search on a sweep that is already there.
+    Planner[] planners = {new BfsPlanner(), new AStarPlanner(),
+                          new DistanceFieldPlanner(), new SweepPlanner()};
+    String[] plannerNames = {"bfs", "astar", "field", "sweep"};
+    for(int i = 0; i < planners.length; i++){
+      String suffix = "." + plannerNames[i];
+      final MappingAnt atHill = new MappingAnt(copy(base), 0, 0);
+      atHill.setPlanner(planners[i]);
+      if(("findFoodPlan" + suffix).contains(filter)){
+        bench.measure("findFoodPlan" + suffix, params, new MicroBenchmark.Op(){
+          public long run(){
+            return planLength(atHill.findFoodPlan());
+          }
+        });
+      }
+
+      if(("deliverFoodPlan" + suffix).contains(filter)){
+        int[] far = farPosition(base, size);
+        final MappingAnt away = new MappingAnt(copy(base), far[0], far[1]);
+        away.setPlanner(planners[i]);
+        bench.measure("deliverFoodPlan" + suffix, params,
+                      new MicroBenchmark.Op(){
+          public long run(){
+            return planLength(away.deliverFoodPlan());
+          }
+        });
+      }
+
+      if(("intoTheUnknownPlan" + suffix).contains(filter)){
+        bench.measure("intoTheUnknownPlan" + suffix, params,
+                      new MicroBenchmark.Op(){
+          public long run(){
+            return planLength(atHill.intoTheUnknownPlan());
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Parses a comma separated list of integers.
+   */
+  private static int[] parseInts(String list){
+    String[] parts = list.split(",");
+    int[] retval = new int[parts.length];
+    for(int i = 0; i < parts.length; i++){
+      retval[i] = Integer.parseInt(parts[i].trim());
+    }
+    return retval;
+  }
+
+  /**
+   * Parses a comma separated list of doubles.
+   */
+  private static double[] parseDoubles(String list){
+    String[] parts = list.split(",");
+    double[] retval = new double[parts.length];
+    for(int i = 0; i < parts.length; i++){
+      retval[i] = Double.parseDouble(parts[i].trim());
+    }
+    return retval;
+  }
+
+  /**
+   * Runs the benchmarks.
+   */
+  public static void main(String[] args) throws Exception{
+    int[] sizes = {64, 256};
+    double[] walls = {0, 0.16};
+    double[] food = {0.05};
+    int warmup = 2, iterations = 3, time = 100;
+    String filter = "";
+    String json = null;
+
+    for(int i = 0; i + 1 < args.length; i += 2){
+      String value = args[i + 1];
+      if(args[i].equals("-sizes")) sizes = parseInts(value);
+      else if(args[i].equals("-walls")) walls = parseDoubles(value);
+      else if(args[i].equals("-food")) food = parseDoubles(value);
+      else if(args[i].equals("-warmup")) warmup = Integer.parseInt(value);
+      else if(args[i].equals("-iterations")) 
+        iterations = Integer.parseInt(value);
+      else if(args[i].equals("-time")) time = Integer.parseInt(value);
+      else if(args[i].equals("-filter")) filter = value;
+      else if(args[i].equals("-json")) json = value;
+      else throw new IllegalArgumentException("Unknown option " + args[i]);
+    }
+
+    MicroBenchmark bench = new MicroBenchmark(warmup, iterations, time);
+    for(int size : sizes){
+      for(double w : walls){
+        for(double f : food){
+          runAll(bench, filter, size, w, f);
+        }
+      }
+    }
+
+    if(json != null){
+      Writer out = new FileWriter(json);
+      try{
+        bench.writeJson(out);
+      }finally{
+        out.close();
+      }
+    }
+  }
+}
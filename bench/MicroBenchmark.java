@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * A small benchmark harness. Each operation is warmed up, then timed over a
+ * number of measurement iterations. Calls are timed in batches, so even
+ * operations that take a few nanoseconds are measured accurately. Results can
+ * be written as JSON so they can be compared from release to release.
+ */
+public class MicroBenchmark{
+  /**
+   * A batch should take at least this long, so that the cost of reading the
+   * clock doesn't show up in the result.
+   */
+  private static final long MIN_BATCH_NANOS = 1000000;
+
+  /**
+   * The operation being benchmarked. 
+   */
+  public interface Op{
+    /**
+     * Runs the operation once.
+     * @return Any value computed by the operation. It is folded into a sink so
+     * the JIT can't throw the work away.
+     */
+    public long run() throws Exception;
+  }
+
+  /**
+   * The result of benchmarking a single operation.
+   */
+  public static class Result{
+    /**
+     * The name of the operation.
+     */
+    public String name;
+
+    /**
+     * The parameters the operation was run with.
+     */
+    public String params;
+
+    /**
+     * The average time per operation over all measurement iterations.
+     */
+    public double nsPerOp;
+
+    /**
+     * The standard deviation of the per-iteration averages.
+     */
+    public double error;
+
+    /**
+     * The total number of operations that were timed.
+     */
+    public long ops;
+
+    /**
+     * Converts to a string.
+     */
+    public String toString(){
+      return String.format(Locale.ROOT, "%-28s %-36s %14.1f ns/op +- %.1f", 
+                           name, params, nsPerOp, error);
+    }
+  }
+
+  /**
+   * The number of iterations to throw away while the JIT warms up.
+   */
+  private int warmupIterations;
+
+  /**
+   * The number of iterations that are timed.
+   */
+  private int measureIterations;
+
+  /**
+   * How long each iteration should run for.
+   */
+  private long iterationNanos;
+
+  /**
+   * Every result measured so far.
+   */
+  private ArrayList<Result> results = new ArrayList<Result>();
+
+  /**
+   * Values returned by the operations end up here.
+   */
+  private static volatile long sink;
+
+  /**
+   * Primary constructor.
+   * @param warmupIterations The number of untimed iterations
+   * @param measureIterations The number of timed iterations
+   * @param iterationMillis How long each iteration should run for
+   */
+  MicroBenchmark(int warmupIterations, int measureIterations, 
+                 int iterationMillis){
+    this.warmupIterations = warmupIterations;
+    this.measureIterations = measureIterations;
+    this.iterationNanos = iterationMillis * 1000000L;
+  }
+
+  /**
+   * Benchmarks an operation and records the result.
+   * @param name The name of the operation
+   * @param params The parameters the operation is run with
+   * @param op The operation
+   * @return The result of the measurement
+   */
+  public Result measure(String name, String params, Op op) throws Exception{
+    // Find a batch size that takes long enough to time.
+    long batch = 1;
+    while(timeBatch(op, batch) < MIN_BATCH_NANOS && batch < (1L << 30)){
+      batch *= 2;
+    }
+
+    for(int i = 0; i < warmupIterations; i++){
+      runIteration(op, batch, null);
+    }
+
+    double[] averages = new double[measureIterations];
+    long[] ops = new long[1];
+    for(int i = 0; i < measureIterations; i++){
+      averages[i] = runIteration(op, batch, ops);
+    }
+
+    double mean = 0;
+    for(double a : averages) mean += a;
+    mean /= averages.length;
+    double variance = 0;
+    for(double a : averages) variance += (a - mean) * (a - mean);
+
+    Result r = new Result();
+    r.name = name;
+    r.params = params;
+    r.nsPerOp = mean;
+    r.error = Math.sqrt(variance / averages.length);
+    r.ops = ops[0];
+    results.add(r);
+    System.out.println(r);
+    return r;
+  }
+
+  /**
+   * Runs batches of the operation until the iteration time is used up.
+   * @param op The operation
+   * @param batch The number of calls per batch
+   * @param ops If not null, the number of calls made is added to ops[0]
+   * @return The average time per call in nanoseconds
+   */
+  private double runIteration(Op op, long batch, long[] ops) throws Exception{
+    long elapsed = 0;
+    long calls = 0;
+    do{
+      elapsed += timeBatch(op, batch);
+      calls += batch;
+    }while(elapsed < iterationNanos);
+    if(ops != null) ops[0] += calls;
+    return (double)elapsed / calls;
+  }
+
+  /**
+   * Times a single batch of calls.
+   * @param op The operation
+   * @param batch The number of calls to make
+   * @return The time taken in nanoseconds
+   */
+  private static long timeBatch(Op op, long batch) throws Exception{
+    long value = 0;
+    long start = System.nanoTime();
+    for(long i = 0; i < batch; i++){
+      value ^= op.run();
+    }
+    long elapsed = System.nanoTime() - start;
+    sink ^= value;
+    return elapsed;
+  }
+
+  /**
+   * Writes every result as a JSON array.
+   * @param out The writer to write to
+   */
+  public void writeJson(Writer out) throws IOException{
+    out.write("[\n");
+    for(int i = 0; i < results.size(); i++){
+      Result r = results.get(i);
+      out.write(String.format(Locale.ROOT, 
+        "  {\"benchmark\": \"%s\", \"params\": \"%s\", \"nsPerOp\": %.3f, " +
+        "\"error\": %.3f, \"ops\": %d}%s\n", r.name, r.params, r.nsPerOp,
+        r.error, r.ops, i + 1 < results.size() ? "," : ""));
+    }
+    out.write("]\n");
+  }
+}
@@ -0,0 +1,204 @@
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Colony-scale stress benchmark. Generates a large world and runs thousands
+ * of MappingAnts on it, reporting the heap the colony holds, the time spent
+ * in garbage collection, the bytes merged per tick and the ticks per second.
+ * Every ant keeps its own map and merges whole maps when it meets another,
+ * so these numbers show how memory and CPU grow with the colony.
+ *
+ * Usage: StressBenchmark [-size 1000] [-ants 1000,5000,10000] [-walls 0.16]
+ *                        [-food 0.01] [-ticks 100] [-seed 0] [-ant MappingAnt]
+ *                        [-json file]
+ *
+ * Large colonies need a large heap, e.g. -Xmx16g.
+ */
+public class StressBenchmark{
+  /**
+   * The results of running one colony size.
+   */
+  static class Result{
+    /**
+     * The number of ants in the colony.
+     */
+    public int ants;
+
+    /**
+     * The number of ticks run.
+     */
+    public int ticks;
+
+    /**
+     * The heap held after the run, less the heap held by the world alone.
+     */
+    public long heapBytes;
+
+    /**
+     * The time spent in garbage collection during the run.
+     */
+    public long gcMillis;
+
+    /**
+     * The bytes of messages merged per tick.
+     */
+    public double mergeBytesPerTick;
+
+    /**
+     * The ticks run per second of wall-clock time.
+     */
+    public double ticksPerSecond;
+
+    /**
+     * The food on the anthill at the end of the run.
+     */
+    public int foodDelivered;
+
+    /**
+     * Converts to a string.
+     */
+    public String toString(){
+      return String.format(Locale.ROOT, 
+                           "%8d %6d %14d %10d %10d %18.0f %12.2f %8d",
+                           ants, ticks, heapBytes / (1024 * 1024),
+                           heapBytes / Math.max(ants, 1), gcMillis,
+                           mergeBytesPerTick, ticksPerSecond, foodDelivered);
+    }
+  }
+
+  /**
+   * Returns the heap in use after asking for a full collection.
+   */
+  private static long usedHeap(MemoryMXBean memory){
+    for(int i = 0; i < 3; i++){
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+   * Returns the total time spent in garbage collection so far.
+   */
+  private static long gcMillis(){
+    long total = 0;
+    for(GarbageCollectorMXBean gc : 
+        ManagementFactory.getGarbageCollectorMXBeans()){
+      total += Math.max(gc.getCollectionTime(), 0);
+    }
+    return total;
+  }
+
+  /**
+   * Runs a single colony size on a freshly generated world.
+   * @param antName The Ant implementation to run
+   * @param ants The number of ants
+   * @param size The width and height of the world
+   * @param walls The wall density
+   * @param food The food density
+   * @param ticks The number of ticks to run
+   * @param seed The seed for the world and the ants
+   * @return The results
+   */
+  static Result run(String antName, int ants, int size, double walls, 
+                    double food, int ticks, long seed) throws Exception{
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    SimWorld world = SimWorld.generate(size, size, walls, food, 
+                                       SimWorld.MAX_FOOD, new Random(seed));
+    long baseline = usedHeap(memory);
+
+    HeadlessSimulator sim = 
+      new HeadlessSimulator(world, HeadlessSimulator.loadAnt(antName), ants, 
+                            0, seed);
+    long gcStart = gcMillis();
+    sim.run(ticks);
+
+    Result r = new Result();
+    r.ants = ants;
+    r.ticks = sim.getTicks();
+    r.gcMillis = gcMillis() - gcStart;
+    r.mergeBytesPerTick = (double)sim.getMessageBytes() / r.ticks;
+    r.ticksPerSecond = r.ticks / (sim.getElapsedNanos() / 1e9);
+    r.foodDelivered = sim.getFoodDelivered();
+    r.heapBytes = usedHeap(memory) - baseline;
+
+    // Keep the colony reachable until its heap has been measured.
+    if(sim.getNumAnts() != ants) throw new IllegalStateException();
+    return r;
+  }
+
+  /**
+   * Parses a comma separated list of integers.
+   */
+  private static int[] parseInts(String list){
+    String[] parts = list.split(",");
+    int[] retval = new int[parts.length];
+    for(int i = 0; i < parts.length; i++){
+      retval[i] = Integer.parseInt(parts[i].trim());
+    }
+    return retval;
+  }
+
+  /**
+   * Runs the benchmark for every colony size.
+   */
+  public static void main(String[] args) throws Exception{
+    int size = 1000;
+    int[] colonies = {1000, 5000, 10000};
+    double walls = SimWorld.WATER_CHANCE, food = 0.01;
+    int ticks = 100;
+    long seed = 0;
+    String antName = "MappingAnt";
+    String json = null;
+
+    for(int i = 0; i + 1 < args.length; i += 2){
+      String value = args[i + 1];
+      if(args[i].equals("-size")) size = Integer.parseInt(value);
+      else if(args[i].equals("-ants")) colonies = parseInts(value);
+      else if(args[i].equals("-walls")) walls = Double.parseDouble(value);
+      else if(args[i].equals("-food")) food = Double.parseDouble(value);
+      else if(args[i].equals("-ticks")) ticks = Integer.parseInt(value);
+      else if(args[i].equals("-seed")) seed = Long.parseLong(value);
+      else if(args[i].equals("-ant")) antName = value;
+      else if(args[i].equals("-json")) json = value;
+      else throw new IllegalArgumentException("Unknown option " + args[i]);
+    }
+
+    System.out.println(String.format(Locale.ROOT, 
+                       "%8s %6s %14s %10s %10s %18s %12s %8s", "ants", 
+                       "ticks", "heap MB", "heap/ant", "gc ms", 
+                       "mergeBytes/tick", "ticks/s", "food"));
+    ArrayList<Result> results = new ArrayList<Result>();
+    for(int ants : colonies){
+      Result r = run(antName, ants, size, walls, food, ticks, seed);
+      results.add(r);
+      System.out.println(r);
+    }
+
+    if(json != null){
+      Writer out = new FileWriter(json);
+      try{
+        out.write("[\n");
+        for(int i = 0; i < results.size(); i++){
+          Result r = results.get(i);
+          out.write(String.format(Locale.ROOT,
+            "  {\"ant\": \"%s\", \"size\": %d, \"walls\": %s, \"food\": %s, " +
+            "\"ants\": %d, \"ticks\": %d, \"heapBytes\": %d, " +
+            "\"gcMillis\": %d, \"mergeBytesPerTick\": %.1f, " +
+            "\"ticksPerSecond\": %.3f, \"food\": %d}%s\n", antName, size,
+            walls, food, r.ants, r.ticks, r.heapBytes, r.gcMillis,
+            r.mergeBytesPerTick, r.ticksPerSecond, r.foodDelivered,
+            i + 1 < results.size() ? "," : ""));
+        }
+        out.write("]\n");
+      }finally{
+        out.close();
+      }
+    }
+  }
+}
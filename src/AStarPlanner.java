@@ -0,0 +1,249 @@
+import ants.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * An A* search over the ant's map, guided by SearchGoal.estimate(). The open
+ * set is a binary heap of cell indices, and all of the bookkeeping lives in
+ * primitive arrays that are reused from one search to the next. With an
+ * estimate of zero this is a plain shortest path search. Every move costs one
+ * unless a subclass weighs the tiles differently.
+ */
+public class AStarPlanner implements Planner{
+  /**
+   * The x offsets of the four directions, in Direction.values() order.
+   */
+  static final int[] DX = {0, 1, 0, -1};
+
+  /**
+   * The y offsets of the four directions, in Direction.values() order.
+   */
+  static final int[] DY = {-1, 0, 1, 0};
+
+  /**
+   * The number of positions expanded by the most recent search.
+   */
+  private int expanded = 0;
+
+  /**
+   * Identifies the current search. Cells whose stamp doesn't match haven't
+   * been reached yet, so the arrays never need clearing.
+   */
+  private int searchId = 0;
+
+  /**
+   * The search that last reached each cell.
+   */
+  private int[] stamp = new int[0];
+
+  /**
+   * The number of moves from the start to each cell.
+   */
+  private int[] cost = new int[0];
+
+  /**
+   * The direction that was taken to enter each cell.
+   */
+  private byte[] parent = new byte[0];
+
+  /**
+   * True for cells that have been expanded in the current search.
+   */
+  private int[] closed = new int[0];
+
+  /**
+   * The cells in the open set, as a binary heap ordered by heapKey.
+   */
+  private int[] heapCell = new int[16];
+
+  /**
+   * The estimated total path length through each cell in the heap.
+   */
+  private int[] heapKey = new int[16];
+
+  /**
+   * The number of entries in the heap.
+   */
+  private int heapSize = 0;
+
+  /**
+   * The order the directions are tried in, shuffled at every cell so ties
+   * are broken randomly.
+   */
+  private final int[] order = {0, 1, 2, 3};
+
+  @Override
+  public ArrayDeque<Action> plan(WorldMap map, int x, int y, boolean hasFood,
+                                 SearchGoal g, Random rand){
+    expanded = 0;
+    int width = map.getWidth();
+    int minX = map.getMinX();
+    int minY = map.getMinY();
+    prepare(width * map.getHeight());
+    begin(map, x, y);
+    int scale = minStepCost();
+
+    int start = (y - minY) * width + (x - minX);
+    stamp[start] = searchId;
+    cost[start] = 0;
+    heapSize = 0;
+    push(start, g.estimate(x, y) * scale);
+
+    resetOrder(order);
+    while(heapSize > 0){
+      int cell = pop();
+      if(closed[cell] == searchId) continue;
+      closed[cell] = searchId;
+      expanded++;
+
+      int cx = cell % width + minX;
+      int cy = cell / width + minY;
+      if(g.isGoal(cx, cy)){
+        return path(cell, start, width);
+      }
+
+      shuffle(order, rand);
+      for(int d : order){
+        int nx = cx + DX[d];
+        int ny = cy + DY[d];
+        if(!map.isPassable(nx, ny)) continue;
+        int next = cell + DX[d] + DY[d] * width;
+        int nextCost = cost[cell] + stepCost(map, nx, ny);
+        if(stamp[next] != searchId || nextCost < cost[next]){
+          stamp[next] = searchId;
+          cost[next] = nextCost;
+          parent[next] = (byte)d;
+          push(next, nextCost + g.estimate(nx, ny) * scale);
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int getNodesExpanded(){
+    return expanded;
+  }
+
+  /**
+   * Called at the start of every search, before any costs are asked for.
+   * Does nothing by default.
+   * @param map The ant's map of the world
+   * @param x The x distance of the start from the anthill
+   * @param y The y distance of the start from the anthill
+   */
+  protected void begin(WorldMap map, int x, int y){
+  }
+
+  /**
+   * Returns the cost of moving onto a tile.
+   * @param map The ant's map of the world
+   * @param x The x distance of the tile from the anthill
+   * @param y The y distance of the tile from the anthill
+   * @return The cost, which must be at least minStepCost()
+   */
+  protected int stepCost(WorldMap map, int x, int y){
+    return 1;
+  }
+
+  /**
+   * Returns the smallest cost stepCost() can return. The goal's estimate,
+   * which counts moves, is scaled by this so it stays a lower bound.
+   */
+  protected int minStepCost(){
+    return 1;
+  }
+
+  /**
+   * Starts a new search, making sure the arrays can hold every cell.
+   * @param cells The number of cells in the map
+   */
+  private void prepare(int cells){
+    if(stamp.length < cells){
+      stamp = new int[cells];
+      cost = new int[cells];
+      parent = new byte[cells];
+      closed = new int[cells];
+      searchId = 0;
+    }
+    searchId++;
+  }
+
+  /**
+   * Follows the parents back from the goal to build the plan.
+   */
+  private ArrayDeque<Action> path(int cell, int start, int width){
+    ArrayDeque<Action> moves = new ArrayDeque<Action>();
+    while(cell != start){
+      int d = parent[cell];
+      moves.addFirst(Move.ACTIONS[d]);
+      cell -= DX[d] + DY[d] * width;
+    }
+    return moves;
+  }
+
+  /**
+   * Puts the directions back in Direction.values() order, so every search
+   * shuffles from the same start and seeded ants make the same plans.
+   */
+  static void resetOrder(int[] order){
+    for(int i = 0; i < order.length; i++){
+      order[i] = i;
+    }
+  }
+
+  /**
+   * Shuffles the direction order, so ties are broken randomly.
+   */
+  static void shuffle(int[] order, Random rand){
+    for(int i = order.length - 1; i > 0; i--){
+      int j = rand.nextInt(i + 1);
+      int t = order[i];
+      order[i] = order[j];
+      order[j] = t;
+    }
+  }
+
+  /**
+   * Adds a cell to the heap.
+   */
+  private void push(int cell, int key){
+    if(heapSize == heapCell.length){
+      heapCell = Arrays.copyOf(heapCell, heapSize * 2);
+      heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+    }
+    int i = heapSize++;
+    while(i > 0){
+      int up = (i - 1) / 2;
+      if(heapKey[up] <= key) break;
+      heapCell[i] = heapCell[up];
+      heapKey[i] = heapKey[up];
+      i = up;
+    }
+    heapCell[i] = cell;
+    heapKey[i] = key;
+  }
+
+  /**
+   * Removes the cell with the smallest key from the heap.
+   */
+  private int pop(){
+    int top = heapCell[0];
+    int cell = heapCell[--heapSize];
+    int key = heapKey[heapSize];
+    int i = 0;
+    while(true){
+      int child = 2 * i + 1;
+      if(child >= heapSize) break;
+      if(child + 1 < heapSize && heapKey[child + 1] < heapKey[child]) child++;
+      if(key <= heapKey[child]) break;
+      heapCell[i] = heapCell[child];
+      heapKey[i] = heapKey[child];
+      i = child;
+    }
+    heapCell[i] = cell;
+    heapKey[i] = key;
+    return top;
+  }
+}
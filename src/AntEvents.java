@@ -0,0 +1,175 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for the slow operations of an ant: planning,
+ * growing and merging maps, and sending and receiving messages. Record with
+ * -XX:StartFlightRecording and look for the "Ants" category to line up
+ * simulator stalls with the ant and operation that caused them.
+ *
+ * Each event has a threshold so only the slow ones are recorded, and when no
+ * recording is running the events are never committed.
+ */
+public class AntEvents{
+  /**
+   * A single run of searchForGoal.
+   */
+  @Name("ants.PlanSearch")
+  @Label("Plan Search")
+  @Category("Ants")
+  @Description("A breadth first search for a plan")
+  @Threshold("1 ms")
+  @StackTrace(false)
+  public static class PlanSearch extends Event{
+    /**
+     * Identifies the ant that searched.
+     */
+    @Label("Ant")
+    public int ant;
+
+    /**
+     * The name of the plan, from SearchGoal.planName().
+     */
+    @Label("Plan")
+    public String plan;
+
+    /**
+     * The number of positions expanded.
+     */
+    @Label("Nodes Expanded")
+    public int nodesExpanded;
+
+    /**
+     * The number of actions in the plan, or -1 if none was found.
+     */
+    @Label("Path Length")
+    public int pathLength;
+
+    /**
+     * True if a plan was found.
+     */
+    @Label("Found")
+    public boolean found;
+  }
+
+  /**
+   * A WorldMap growing its arrays.
+   */
+  @Name("ants.MapResize")
+  @Label("Map Resize")
+  @Category("Ants")
+  @Description("A WorldMap growing to fit new positions")
+  @Threshold("0 ms")
+  @StackTrace(false)
+  public static class MapResize extends Event{
+    /**
+     * The size of the map before it grew.
+     */
+    @Label("Old Size")
+    public int oldSize;
+
+    /**
+     * The size of the map after it grew.
+     */
+    @Label("New Size")
+    public int newSize;
+  }
+
+  /**
+   * A WorldMap.mergeInto call.
+   */
+  @Name("ants.MapMerge")
+  @Label("Map Merge")
+  @Category("Ants")
+  @Description("Merging another ant's map into this one")
+  @Threshold("1 ms")
+  @StackTrace(false)
+  public static class MapMerge extends Event{
+    /**
+     * The number of cells of the other map that were looked at.
+     */
+    @Label("Cells Scanned")
+    public int cellsScanned;
+
+    /**
+     * The number of cells that were newer and so were copied.
+     */
+    @Label("Cells Changed")
+    public int cellsChanged;
+  }
+
+  /**
+   * An ant building a message in send(), or handling one in receive().
+   */
+  @Name("ants.Message")
+  @Label("Message")
+  @Category("Ants")
+  @Description("Sending or receiving a message between ants")
+  @Threshold("1 ms")
+  @StackTrace(false)
+  public static class Message extends Event{
+    /**
+     * Identifies the ant that sent or received the message.
+     */
+    @Label("Ant")
+    public int ant;
+
+    /**
+     * True if the ant was receiving the message.
+     */
+    @Label("Received")
+    public boolean received;
+
+    /**
+     * The size of the message.
+     */
+    @Label("Payload")
+    @DataAmount
+    public int payloadBytes;
+  }
+
+  /**
+   * Finishes a plan search event.
+   * @param event The event, begun when the search started
+   * @param ant The ant that searched
+   * @param plan The name of the plan
+   * @param nodesExpanded The number of positions expanded
+   * @param pathLength The number of actions in the plan, or -1
+   */
+  public static void endPlanSearch(PlanSearch event, Object ant, String plan,
+                                   int nodesExpanded, int pathLength){
+    event.end();
+    if(event.shouldCommit()){
+      event.ant = System.identityHashCode(ant);
+      event.plan = plan;
+      event.nodesExpanded = nodesExpanded;
+      event.pathLength = pathLength;
+      event.found = pathLength >= 0;
+      event.commit();
+    }
+  }
+
+  /**
+   * Finishes a message event.
+   * @param event The event, begun before the message was handled
+   * @param ant The ant that sent or received the message
+   * @param received True if the ant was receiving
+   * @param payloadBytes The size of the message
+   */
+  public static void endMessage(Message event, Object ant, boolean received,
+                                int payloadBytes){
+    event.end();
+    if(event.shouldCommit()){
+      event.ant = System.identityHashCode(ant);
+      event.received = received;
+      event.payloadBytes = payloadBytes;
+      event.commit();
+    }
+  }
+}
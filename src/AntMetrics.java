@@ -0,0 +1,350 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the ants' hot paths. Metrics are only
+ * collected when the JVM is started with -Dants.metrics=true. ENABLED is a
+ * constant, so when metrics are off the JIT removes the checks entirely.
+ * Recording never allocates: counters are LongAdders and histograms have a
+ * fixed set of buckets.
+ *
+ * At the end of a run the metrics can be written as CSV or JSON. If
+ * -Dants.metrics.file is set, dump() writes to that file (JSON if the name
+ * ends in .json), otherwise it prints CSV.
+ */
+public class AntMetrics{
+  /**
+   * True if metrics are being collected.
+   */
+  public static final boolean ENABLED = Boolean.getBoolean("ants.metrics");
+
+  /**
+   * A counter that many threads can add to without contending.
+   */
+  public static class Counter{
+    /**
+     * The striped count.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment(){
+      count.increment();
+    }
+
+    /**
+     * Adds an amount to the counter.
+     * @param amount The amount to add
+     */
+    public void add(long amount){
+      count.add(amount);
+    }
+
+    /**
+     * Returns the current count.
+     */
+    public long get(){
+      return count.sum();
+    }
+  }
+
+  /**
+   * A histogram of latencies in nanoseconds. Bucket i holds the values that
+   * need i bits, so bucket boundaries are powers of two.
+   */
+  public static class Histogram{
+    /**
+     * The number of buckets. The last one holds everything above 2^46 ns.
+     */
+    private static final int BUCKETS = 48;
+
+    /**
+     * The number of values in each bucket.
+     */
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    /**
+     * The sum of every value recorded.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Creates an empty histogram.
+     */
+    Histogram(){
+      for(int i = 0; i < BUCKETS; i++){
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    /**
+     * Records a value.
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos){
+      int bucket = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+      buckets[Math.min(bucket, BUCKETS - 1)].increment();
+      sum.add(nanos);
+    }
+
+    /**
+     * Returns the number of values recorded.
+     */
+    public long count(){
+      long total = 0;
+      for(LongAdder b : buckets) total += b.sum();
+      return total;
+    }
+
+    /**
+     * Returns the average of the values recorded.
+     */
+    public double mean(){
+      long count = count();
+      return count == 0 ? 0 : (double)sum.sum() / count;
+    }
+
+    /**
+     * Estimates a percentile. The answer is the upper bound of the bucket the
+     * percentile falls in.
+     * @param p The percentile, between 0 and 1
+     * @return The estimated value in nanoseconds
+     */
+    public long percentile(double p){
+      long count = count();
+      if(count == 0) return 0;
+      long rank = (long)Math.ceil(p * count);
+      long seen = 0;
+      for(int i = 0; i < BUCKETS; i++){
+        seen += buckets[i].sum();
+        if(seen >= rank) return i == 0 ? 0 : (1L << i) - 1;
+      }
+      return Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Every counter, by name, in name order.
+   */
+  private static final ConcurrentSkipListMap<String, Counter> counters = 
+    new ConcurrentSkipListMap<String, Counter>();
+
+  /**
+   * Every histogram, by name, in name order.
+   */
+  private static final ConcurrentSkipListMap<String, Histogram> histograms = 
+    new ConcurrentSkipListMap<String, Histogram>();
+
+  /**
+   * The counters of nodes expanded, by plan name. Kept separately so looking
+   * one up is a single hash lookup.
+   */
+  private static final ConcurrentHashMap<String, Counter> nodesByPlan =
+    new ConcurrentHashMap<String, Counter>();
+
+  /**
+   * The time taken by each getAction call.
+   */
+  public static final Histogram GET_ACTION = histogram("getAction.nanos");
+
+  /**
+   * Plans that were thrown away before they were finished.
+   */
+  public static final Counter PLANS_DISCARDED = counter("plans.discarded");
+
+  /**
+   * Searches that found no plan.
+   */
+  public static final Counter PLANS_FAILED = counter("plans.failed");
+
+  /**
+   * The number of times a WorldMap grew.
+   */
+  public static final Counter MAP_RESIZES = counter("worldMap.resizes");
+
+  /**
+   * The number of cells copied while growing WorldMaps.
+   */
+  public static final Counter MAP_CELLS_COPIED = 
+    counter("worldMap.cellsCopied");
+
+  /**
+   * The number of bytes sent to other ants.
+   */
+  public static final Counter BYTES_SENT = counter("messages.bytesSent");
+
+  /**
+   * The number of bytes received from other ants.
+   */
+  public static final Counter BYTES_RECEIVED = 
+    counter("messages.bytesReceived");
+
+  /**
+   * Merges that changed at least one cell.
+   */
+  public static final Counter MERGES_APPLIED = counter("merges.applied");
+
+  /**
+   * Merges that brought no new information.
+   */
+  public static final Counter MERGES_SKIPPED = counter("merges.skipped");
+
+  /**
+   * The number of cells changed by merges.
+   */
+  public static final Counter MERGE_CELLS_CHANGED = 
+    counter("merges.cellsChanged");
+
+  /**
+   * Trips to food or back that were found in the route cache.
+   */
+  public static final Counter ROUTE_CACHE_HITS = counter("routeCache.hits");
+
+  /**
+   * Trips to food or back that had to be planned.
+   */
+  public static final Counter ROUTE_CACHE_MISSES = 
+    counter("routeCache.misses");
+
+  /**
+   * Searches SweepPlanner had to start over, because the ant moved or the
+   * map changed shape.
+   */
+  public static final Counter SWEEPS_STARTED = counter("sweeps.started");
+
+  /**
+   * Plans PlanSpeculator started working out in the background.
+   */
+  public static final Counter SPECULATIONS_STARTED = 
+    counter("speculation.started");
+
+  /**
+   * Plans worked out in the background that the ant went on to follow.
+   */
+  public static final Counter SPECULATIONS_USED = counter("speculation.used");
+
+  /**
+   * Times an ant asked for a plan worked out in the background, but it
+   * wasn't ready or no longer held.
+   */
+  public static final Counter SPECULATIONS_MISSED = 
+    counter("speculation.missed");
+
+  /**
+   * Gets a counter, creating it the first time it is asked for.
+   * @param name The name of the counter
+   * @return The counter
+   */
+  public static Counter counter(String name){
+    Counter c = counters.get(name);
+    if(c == null){
+      c = new Counter();
+      Counter old = counters.putIfAbsent(name, c);
+      if(old != null) c = old;
+    }
+    return c;
+  }
+
+  /**
+   * Gets a histogram, creating it the first time it is asked for.
+   * @param name The name of the histogram
+   * @return The histogram
+   */
+  public static Histogram histogram(String name){
+    Histogram h = histograms.get(name);
+    if(h == null){
+      h = new Histogram();
+      Histogram old = histograms.putIfAbsent(name, h);
+      if(old != null) h = old;
+    }
+    return h;
+  }
+
+  /**
+   * Gets the counter of nodes expanded by searches for the given plan.
+   * @param planName The name of the plan, from SearchGoal.planName()
+   * @return The counter
+   */
+  public static Counter nodesExpanded(String planName){
+    Counter c = nodesByPlan.get(planName);
+    if(c == null){
+      c = counter("nodesExpanded." + planName);
+      nodesByPlan.putIfAbsent(planName, c);
+    }
+    return c;
+  }
+
+  /**
+   * Writes every metric as CSV, one row per counter or histogram.
+   * @param out The writer to write to
+   */
+  public static void writeCsv(Writer out) throws IOException{
+    out.write("metric,count,mean,p50,p99,max\n");
+    for(Map.Entry<String, Counter> e : counters.entrySet()){
+      out.write(e.getKey() + "," + e.getValue().get() + ",,,,\n");
+    }
+    for(Map.Entry<String, Histogram> e : histograms.entrySet()){
+      Histogram h = e.getValue();
+      out.write(e.getKey() + "," + h.count() + "," + (long)h.mean() + "," + 
+                h.percentile(0.5) + "," + h.percentile(0.99) + "," + 
+                h.percentile(1) + "\n");
+    }
+  }
+
+  /**
+   * Writes every metric as a JSON object.
+   * @param out The writer to write to
+   */
+  public static void writeJson(Writer out) throws IOException{
+    out.write("{\n  \"counters\": {");
+    String separator = "\n";
+    for(Map.Entry<String, Counter> e : counters.entrySet()){
+      out.write(separator + "    \"" + e.getKey() + "\": " + e.getValue().get());
+      separator = ",\n";
+    }
+    out.write("\n  },\n  \"histograms\": {");
+    separator = "\n";
+    for(Map.Entry<String, Histogram> e : histograms.entrySet()){
+      Histogram h = e.getValue();
+      out.write(separator + "    \"" + e.getKey() + "\": {\"count\": " + 
+                h.count() + ", \"mean\": " + (long)h.mean() + ", \"p50\": " +
+                h.percentile(0.5) + ", \"p99\": " + h.percentile(0.99) + 
+                ", \"max\": " + h.percentile(1) + "}");
+      separator = ",\n";
+    }
+    out.write("\n  }\n}\n");
+  }
+
+  /**
+   * Writes the metrics at the end of a run, if they are enabled. They go to
+   * the file named by -Dants.metrics.file, or to standard out as CSV.
+   */
+  public static void dump() throws IOException{
+    if(!ENABLED) return;
+    String file = System.getProperty("ants.metrics.file");
+    if(file == null){
+      PrintWriter out = new PrintWriter(System.out);
+      writeCsv(out);
+      out.flush();
+      return;
+    }
+    Writer out = new FileWriter(file);
+    try{
+      if(file.endsWith(".json")){
+        writeJson(out);
+      }else{
+        writeCsv(out);
+      }
+    }finally{
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,285 @@
+import ants.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Feeds a log written by RecordingAnt back into a fresh ant. The ant is given
+ * the recorded seed, so an unchanged ant makes exactly the recorded moves and
+ * every replay is the same workload. This makes it possible to profile
+ * changes to an ant without the noise of a live game.
+ *
+ * Usage: AntReplayer log [loops] [ant]
+ */
+public class AntReplayer{
+  /**
+   * The contents of the log.
+   */
+  private ByteBuffer log;
+
+  /**
+   * The name of the class of the recorded ant.
+   */
+  private String antName;
+
+  /**
+   * Where the entries start, just after the header.
+   */
+  private int entriesStart;
+
+  /**
+   * The results of a single replay.
+   */
+  public static class Result{
+    /**
+     * The number of getAction calls replayed.
+     */
+    public int actions;
+
+    /**
+     * The number of getAction calls that chose a different action than the
+     * recorded ant.
+     */
+    public int mismatches;
+
+    /**
+     * The number of send calls replayed.
+     */
+    public int sends;
+
+    /**
+     * The number of receive calls replayed.
+     */
+    public int receives;
+
+    /**
+     * The time spent inside the ant, in nanoseconds.
+     */
+    public long nanos;
+
+    /**
+     * The bytes allocated by getAction calls, if allocations were counted.
+     */
+    public long actionBytes;
+
+    /**
+     * The bytes allocated by send calls, if allocations were counted.
+     */
+    public long sendBytes;
+
+    /**
+     * The bytes allocated by receive calls, if allocations were counted.
+     */
+    public long receiveBytes;
+
+    /**
+     * Converts to a string.
+     */
+    public String toString(){
+      return actions + " actions, " + sends + " sends, " + receives + 
+             " receives, " + mismatches + " mismatched actions, " + 
+             nanos / 1000000 + " ms in the ant";
+    }
+  }
+
+  /**
+   * A tile whose values are read from the log.
+   */
+  private static class RecordedTile implements Tile{
+    /**
+     * The amount of food on the tile.
+     */
+    public int food;
+
+    /**
+     * The number of ants on the tile.
+     */
+    public int ants;
+
+    /**
+     * Whether ants can walk on the tile.
+     */
+    public boolean travelable;
+
+    @Override
+    public int getAmountOfFood(){
+      return food;
+    }
+
+    @Override
+    public int getNumAnts(){
+      return ants;
+    }
+
+    @Override
+    public boolean isTravelable(){
+      return travelable;
+    }
+  }
+
+  /**
+   * Surroundings made of recorded tiles. One instance is refilled for every
+   * getAction call.
+   */
+  private static class RecordedSurroundings implements Surroundings{
+    /**
+     * The current tile followed by the tiles in RecordingAnt.DIRECTIONS order.
+     */
+    public RecordedTile[] tiles = new RecordedTile[5];
+
+    /**
+     * Creates the tiles.
+     */
+    RecordedSurroundings(){
+      for(int i = 0; i < tiles.length; i++){
+        tiles[i] = new RecordedTile();
+      }
+    }
+
+    @Override
+    public Tile getCurrentTile(){
+      return tiles[0];
+    }
+
+    @Override
+    public Tile getTile(Direction direction){
+      return tiles[1 + direction.ordinal()];
+    }
+  }
+
+  /**
+   * Opens a log.
+   * @param file The log written by RecordingAnt
+   */
+  AntReplayer(File file) throws IOException{
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+    try{
+      FileChannel channel = in.getChannel();
+      this.log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }finally{
+      in.close();
+    }
+    if(log.getInt() != RecordingAnt.MAGIC){
+      throw new IOException(file + " is not an ant log");
+    }
+    if(log.getInt() != RecordingAnt.VERSION){
+      throw new IOException(file + " has an unknown version");
+    }
+    byte[] name = new byte[log.getShort()];
+    log.get(name);
+    this.antName = new String(name, StandardCharsets.UTF_8);
+    this.entriesStart = log.position();
+  }
+
+  /**
+   * Returns the name of the class of the recorded ant.
+   */
+  public String getAntName(){
+    return antName;
+  }
+
+  /**
+   * Replays the whole log into an ant.
+   * @param ant A fresh ant
+   * @return The results of the replay
+   */
+  public Result replay(Ant ant) throws IOException{
+    return replay(ant, false);
+  }
+
+  /**
+   * Replays the whole log into an ant, optionally counting the bytes the ant
+   * allocates in each call.
+   * @param ant A fresh ant
+   * @param countAllocations True to count the bytes allocated by the ant
+   * @return The results of the replay
+   */
+  public Result replay(Ant ant, boolean countAllocations) throws IOException{
+    com.sun.management.ThreadMXBean threads = countAllocations ? 
+      (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean() :
+      null;
+    ByteBuffer in = log.duplicate();
+    in.position(entriesStart);
+    RecordedSurroundings surroundings = new RecordedSurroundings();
+    Result r = new Result();
+
+    while(in.hasRemaining()){
+      byte tag = in.get();
+      if(tag == RecordingAnt.SEED){
+        long seed = in.getLong();
+        if(ant instanceof Seedable) ((Seedable)ant).setSeed(seed);
+      }else if(tag == RecordingAnt.ACTION){
+        for(RecordedTile t : surroundings.tiles){
+          t.food = in.getInt();
+          t.ants = in.getInt();
+          t.travelable = in.get() != 0;
+        }
+        byte recorded = in.get();
+        long allocated = allocatedBytes(threads);
+        long start = System.nanoTime();
+        Action a = ant.getAction(surroundings);
+        r.nanos += System.nanoTime() - start;
+        r.actionBytes += allocatedBytes(threads) - allocated;
+        if(RecordingAnt.encode(a) != recorded) r.mismatches++;
+        r.actions++;
+      }else if(tag == RecordingAnt.SEND){
+        in.getInt();
+        long allocated = allocatedBytes(threads);
+        long start = System.nanoTime();
+        ant.send();
+        r.nanos += System.nanoTime() - start;
+        r.sendBytes += allocatedBytes(threads) - allocated;
+        r.sends++;
+      }else if(tag == RecordingAnt.RECEIVE){
+        int length = in.getInt();
+        byte[] data = null;
+        if(length >= 0){
+          data = new byte[length];
+          in.get(data);
+        }
+        long allocated = allocatedBytes(threads);
+        long start = System.nanoTime();
+        ant.receive(data);
+        r.nanos += System.nanoTime() - start;
+        r.receiveBytes += allocatedBytes(threads) - allocated;
+        r.receives++;
+      }else{
+        throw new IOException("Unknown entry " + tag + " at " + 
+                              (in.position() - 1));
+      }
+    }
+    return r;
+  }
+
+  /**
+   * Returns the bytes allocated so far by this thread, or 0 if we are not
+   * counting allocations.
+   */
+  private static long allocatedBytes(com.sun.management.ThreadMXBean threads){
+    return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+  }
+
+  /**
+   * Replays a log, optionally several times or into a different ant class.
+   */
+  public static void main(String[] args) throws Exception{
+    if(args.length < 1){
+      System.err.println("Usage: AntReplayer log [loops] [ant]");
+      System.exit(1);
+    }
+    AntReplayer replayer = new AntReplayer(new File(args[0]));
+    int loops = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+    String name = args.length > 2 ? args[2] : replayer.getAntName();
+    Class<? extends Ant> antClass = HeadlessSimulator.loadAnt(name);
+
+    for(int i = 0; i < loops; i++){
+      Ant ant = antClass.getDeclaredConstructor().newInstance();
+      System.out.println(name + ": " + replayer.replay(ant));
+    }
+    AntMetrics.dump();
+  }
+}
@@ -0,0 +1,144 @@
+import ants.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The original planner: a breadth first search of the ant's map. Every entry
+ * in the fringe is a packed move (see Move.pack()) along with the entry it was
+ * reached from, so the moves taken so far are only put together for the plan
+ * that reaches the goal. The arrays are reused from one search to the next.
+ */
+public class BfsPlanner implements Planner{
+  /**
+   * The number of positions expanded by the most recent search.
+   */
+  private int expanded = 0;
+
+  /**
+   * Identifies the current search. Cells whose stamp doesn't match haven't
+   * been expanded yet, so the closed set never needs clearing.
+   */
+  private int searchId = 0;
+
+  /**
+   * The search that last expanded each cell. This is the closed set.
+   */
+  private int[] closed = new int[0];
+
+  /**
+   * The packed move that reached each fringe entry.
+   */
+  private int[] fringe = new int[16];
+
+  /**
+   * The fringe entry each entry was reached from, or -1 for the start.
+   */
+  private int[] from = new int[16];
+
+  /**
+   * The possible moves out of the position being expanded.
+   */
+  private final int[] successors = new int[4];
+
+  /**
+   * We perform a breadth first search on the map until we find what we are
+   * looking for or have exhausted all options.
+   */
+  @Override
+  public ArrayDeque<Action> plan(WorldMap map, int x, int y, boolean hasFood,
+                                 SearchGoal g, Random rand){
+    expanded = 0;
+    int minX = map.getMinX();
+    int minY = map.getMinY();
+    int width = map.getWidth();
+    int height = map.getHeight();
+    reset(width * height);
+
+    // We start off at the current position of the ant.
+    fringe[0] = Move.pack(0, x, y);
+    from[0] = -1;
+    int head = 0;
+    int tail = 1;
+
+    // If the fringe is ever empty, then we have exhausted all possibilites.
+    while(head < tail){
+      // The current entry we are considering.
+      int consider = head++;
+      int cx = Move.unpackX(fringe[consider]);
+      int cy = Move.unpackY(fringe[consider]);
+
+      // The map tells us the possible moves. (We wont plan to move into unknown
+      // areas.
+      int count = map.getPossibleMoves(cx, cy, hasFood, successors);
+      shuffle(successors, count, rand);
+
+      // We make sure that the current position hasn't been considered yet, and
+      // if it has, we continue to the next one.
+      if(cx >= minX && cy >= minY && cx - minX < width && cy - minY < height){
+        int cell = (cy - minY) * width + (cx - minX);
+        if(closed[cell] == searchId) continue;
+        closed[cell] = searchId;
+      }
+      expanded++;
+
+      // If we are at the goal, then we are done.
+      if(g.isGoal(cx, cy)){
+        return path(consider);
+      }
+
+      // Add all of the successor states to the fringe.
+      if(tail + count > fringe.length){
+        fringe = Arrays.copyOf(fringe, fringe.length * 2);
+        from = Arrays.copyOf(from, from.length * 2);
+      }
+      for(int i = 0; i < count; i++){
+        fringe[tail] = successors[i];
+        from[tail] = consider;
+        tail++;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int getNodesExpanded(){
+    return expanded;
+  }
+
+  /**
+   * Starts a new search, growing the closed set if the map has grown.
+   */
+  private void reset(int cells){
+    if(closed.length < cells){
+      closed = new int[cells];
+      searchId = 0;
+    }
+    searchId++;
+  }
+
+  /**
+   * Shuffles the first few moves the same way Collections.shuffle() would,
+   * so a seeded ant makes the same plans it always has.
+   */
+  private static void shuffle(int[] moves, int count, Random rand){
+    for(int i = count; i > 1; i--){
+      int j = rand.nextInt(i);
+      int tmp = moves[i - 1];
+      moves[i - 1] = moves[j];
+      moves[j] = tmp;
+    }
+  }
+
+  /**
+   * Follows the entries back from the goal to build the plan.
+   */
+  private ArrayDeque<Action> path(int entry){
+    ArrayDeque<Action> moves = new ArrayDeque<Action>();
+    while(from[entry] >= 0){
+      moves.addFirst(Move.unpackAction(fringe[entry]));
+      entry = from[entry];
+    }
+    return moves;
+  }
+}
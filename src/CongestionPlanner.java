@@ -0,0 +1,51 @@
+/**
+ * An A* search that steers around crowds. Moving onto a tile costs more the
+ * more ants were seen on it, and the sighting counts for less the longer ago
+ * it was made, so a crowd that has since moved on is soon ignored. Gatherers
+ * that would all queue up in the same corridor spread over parallel routes
+ * instead.
+ */
+public class CongestionPlanner extends AStarPlanner{
+  /**
+   * The cost of moving onto an empty tile.
+   */
+  private static final int STEP_COST = 4;
+
+  /**
+   * The extra cost of each ant freshly seen on a tile.
+   */
+  private static final int ANT_COST = 4;
+
+  /**
+   * The number of timesteps after which a sighting of ants is ignored.
+   */
+  private static final int FRESH_STEPS = 10;
+
+  /**
+   * The current timestep, as far as the map is concerned.
+   */
+  private int now = 0;
+
+  /**
+   * The ant has just seen the tile it is standing on, so that tile's
+   * timestep is the current one.
+   */
+  @Override
+  protected void begin(WorldMap map, int x, int y){
+    now = map.getLastSeen(x, y);
+  }
+
+  @Override
+  protected int stepCost(WorldMap map, int x, int y){
+    int ants = map.getAnts(x, y);
+    if(ants == 0) return STEP_COST;
+    int fresh = FRESH_STEPS - (now - map.getLastSeen(x, y));
+    if(fresh <= 0) return STEP_COST;
+    return STEP_COST + ANT_COST * ants * fresh / FRESH_STEPS;
+  }
+
+  @Override
+  protected int minStepCost(){
+    return STEP_COST;
+  }
+}
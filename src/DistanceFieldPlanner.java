@@ -0,0 +1,144 @@
+import ants.*;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Plans by building a distance field: a breadth first search outwards from
+ * every goal at once, which gives each cell its distance to the closest goal.
+ * The ant then walks downhill from its position. This pays off when there are
+ * many goals, since the search never has to look further than the closest.
+ */
+public class DistanceFieldPlanner implements Planner{
+  /**
+   * The number of positions expanded by the most recent search.
+   */
+  private int expanded = 0;
+
+  /**
+   * Identifies the current search, so the arrays never need clearing.
+   */
+  private int searchId = 0;
+
+  /**
+   * The search that last reached each cell.
+   */
+  private int[] stamp = new int[0];
+
+  /**
+   * The distance from each cell to the closest goal.
+   */
+  private int[] distance = new int[0];
+
+  /**
+   * The breadth first search queue of cell indices.
+   */
+  private int[] queue = new int[0];
+
+  /**
+   * The order the directions are tried in, shuffled at every cell so ties
+   * are broken randomly.
+   */
+  private final int[] order = {0, 1, 2, 3};
+
+  @Override
+  public ArrayDeque<Action> plan(WorldMap map, int x, int y, boolean hasFood,
+                                 SearchGoal g, Random rand){
+    expanded = 0;
+    if(g.isGoal(x, y)){
+      expanded = 1;
+      return new ArrayDeque<Action>();
+    }
+
+    int width = map.getWidth();
+    int height = map.getHeight();
+    int minX = map.getMinX();
+    int minY = map.getMinY();
+    prepare(width * height);
+    int start = (y - minY) * width + (x - minX);
+
+    // Every known goal is a source.
+    int head = 0, tail = 0;
+    for(int cy = 0; cy < height; cy++){
+      for(int cx = 0; cx < width; cx++){
+        if(map.isPassable(cx + minX, cy + minY) && 
+           g.isGoal(cx + minX, cy + minY)){
+          int cell = cy * width + cx;
+          stamp[cell] = searchId;
+          distance[cell] = 0;
+          queue[tail++] = cell;
+        }
+      }
+    }
+
+    // Grow the field until it reaches the ant. The ant's own cell counts even
+    // if it isn't passable, since the ant is already standing there.
+    boolean reached = false;
+    while(head < tail && !reached){
+      int cell = queue[head++];
+      expanded++;
+      int cx = cell % width + minX;
+      int cy = cell / width + minY;
+      for(int d = 0; d < 4; d++){
+        int nx = cx + AStarPlanner.DX[d];
+        int ny = cy + AStarPlanner.DY[d];
+        if(nx < minX || ny < minY || nx >= minX + width || 
+           ny >= minY + height) continue;
+        int next = cell + AStarPlanner.DX[d] + AStarPlanner.DY[d] * width;
+        if(next == start){
+          if(stamp[next] != searchId){
+            stamp[next] = searchId;
+            distance[next] = distance[cell] + 1;
+          }
+          reached = true;
+        }else if(stamp[next] != searchId && map.isPassable(nx, ny)){
+          stamp[next] = searchId;
+          distance[next] = distance[cell] + 1;
+          queue[tail++] = next;
+        }
+      }
+    }
+    if(!reached) return null;
+
+    // Walk downhill to the closest goal.
+    ArrayDeque<Action> moves = new ArrayDeque<Action>();
+    AStarPlanner.resetOrder(order);
+    int cell = start;
+    int cx = x, cy = y;
+    while(distance[cell] > 0){
+      AStarPlanner.shuffle(order, rand);
+      for(int d : order){
+        int nx = cx + AStarPlanner.DX[d];
+        int ny = cy + AStarPlanner.DY[d];
+        if(!map.isPassable(nx, ny)) continue;
+        int next = cell + AStarPlanner.DX[d] + AStarPlanner.DY[d] * width;
+        if(stamp[next] == searchId && distance[next] == distance[cell] - 1){
+          moves.add(Move.ACTIONS[d]);
+          cell = next;
+          cx = nx;
+          cy = ny;
+          break;
+        }
+      }
+    }
+    return moves;
+  }
+
+  @Override
+  public int getNodesExpanded(){
+    return expanded;
+  }
+
+  /**
+   * Starts a new search, making sure the arrays can hold every cell.
+   * @param cells The number of cells in the map
+   */
+  private void prepare(int cells){
+    if(stamp.length < cells){
+      stamp = new int[cells];
+      distance = new int[cells];
+      queue = new int[cells];
+      searchId = 0;
+    }
+    searchId++;
+  }
+}
@@ -0,0 +1,337 @@
+import ants.*;
+import java.util.Arrays;
+
+/**
+ * The best direction to move from every known cell of a map towards the
+ * closest of a set of goals. It is built once with a breadth first search out
+ * from every goal, after which finding the next move is a single array
+ * lookup. When the map learns about a new wall or a newly walkable cell, only
+ * the part of the field that changes is repaired.
+ */
+public class FlowField{
+  /**
+   * The distance of cells no goal can be reached from.
+   */
+  private static final int UNREACHED = Integer.MAX_VALUE;
+
+  /**
+   * The direction stored for a goal cell, where there is no need to move.
+   */
+  private static final byte AT_GOAL = 4;
+
+  /**
+   * The direction stored for cells without a way to a goal.
+   */
+  private static final byte NONE = -1;
+
+  /**
+   * The destinations of the field.
+   */
+  private final SearchGoal goal;
+
+  /**
+   * True when the field must be rebuilt before it is used.
+   */
+  private boolean stale = true;
+
+  /**
+   * The smallest x distance from the anthill the field covers.
+   */
+  private int minX;
+
+  /**
+   * The smallest y distance from the anthill the field covers.
+   */
+  private int minY;
+
+  /**
+   * The number of columns the field covers.
+   */
+  private int width;
+
+  /**
+   * The number of rows the field covers.
+   */
+  private int height;
+
+  /**
+   * The number of moves from each cell to the closest goal.
+   */
+  private int[] distance = new int[0];
+
+  /**
+   * The direction to move from each cell, in Direction.values() order.
+   */
+  private byte[] direction = new byte[0];
+
+  /**
+   * The search queue, of cell indices.
+   */
+  private int[] queue = new int[0];
+
+  /**
+   * Marks the cells cut off by a new wall while the field is repaired.
+   */
+  private int[] mark = new int[0];
+
+  /**
+   * The value in mark for the current repair.
+   */
+  private int markId = 0;
+
+  /**
+   * Creates a field that is built the first time it is used.
+   * @param goal The destinations of the field
+   */
+  public FlowField(SearchGoal goal){
+    this.goal = goal;
+  }
+
+  /**
+   * Returns the destinations of the field.
+   */
+  public SearchGoal getGoal(){
+    return goal;
+  }
+
+  /**
+   * Forces the field to be rebuilt the next time it is used. Needed when the
+   * goals change, or the map changes in more places than we keep track of.
+   */
+  public void invalidate(){
+    stale = true;
+  }
+
+  /**
+   * Returns the next move towards the closest goal.
+   * @param map The map the field is for
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   * @return The move to make, or null if the position is a goal or no goal
+   * can be reached from it
+   */
+  public Action step(WorldMap map, int x, int y){
+    refresh(map);
+    int cx = x - minX;
+    int cy = y - minY;
+    if(cx < 0 || cy < 0 || cx >= width || cy >= height) return null;
+    byte d = direction[cy * width + cx];
+    if(d == NONE || d == AT_GOAL) return null;
+    return Move.ACTIONS[d];
+  }
+
+  /**
+   * Returns the number of moves from a position to the closest goal.
+   * @param map The map the field is for
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   * @return The distance, or -1 if no goal can be reached
+   */
+  public int distance(WorldMap map, int x, int y){
+    refresh(map);
+    int cx = x - minX;
+    int cy = y - minY;
+    if(cx < 0 || cy < 0 || cx >= width || cy >= height) return -1;
+    int d = distance[cy * width + cx];
+    return d == UNREACHED ? -1 : d;
+  }
+
+  /**
+   * Repairs the field after a known walkable cell turned out to be a wall.
+   * Every cell whose route ran through the wall is cut loose, and then
+   * reconnected from the cells around it that still have a route.
+   * @param map The map the field is for, already holding the wall
+   * @param x The x distance of the wall from the anthill
+   * @param y The y distance of the wall from the anthill
+   */
+  void wallAdded(WorldMap map, int x, int y){
+    if(stale || !covers(map)) return;
+    int wall = (y - minY) * width + (x - minX);
+    if(distance[wall] == UNREACHED) return;
+
+    // Find every cell whose route runs through the wall.
+    markId++;
+    int tail = 0;
+    mark[wall] = markId;
+    queue[tail++] = wall;
+    for(int head = 0; head < tail; head++){
+      int cell = queue[head];
+      for(int d = 0; d < 4; d++){
+        int next = neighbor(cell, d);
+        if(next < 0 || mark[next] == markId) continue;
+        // The neighbor's route runs through this cell if it moves back here.
+        if(direction[next] == (d + 2) % 4){
+          mark[next] = markId;
+          queue[tail++] = next;
+        }
+      }
+    }
+    for(int i = 0; i < tail; i++){
+      distance[queue[i]] = UNREACHED;
+      direction[queue[i]] = NONE;
+    }
+
+    // Reconnect the cut off cells from their neighbors that still have a
+    // route. Those seeds start at different distances, so they are sorted and
+    // merged with the search queue to keep cells in order of distance.
+    long[] seeds = new long[tail];
+    int seedCount = 0;
+    for(int i = 0; i < tail; i++){
+      int cell = queue[i];
+      if(cell == wall) continue;
+      int best = UNREACHED;
+      for(int d = 0; d < 4; d++){
+        int next = neighbor(cell, d);
+        if(next < 0 || mark[next] == markId) continue;
+        if(distance[next] != UNREACHED && distance[next] + 1 < best){
+          best = distance[next] + 1;
+          direction[cell] = (byte)d;
+        }
+      }
+      if(best != UNREACHED){
+        distance[cell] = best;
+        seeds[seedCount++] = ((long)best << 32) | cell;
+      }
+    }
+    Arrays.sort(seeds, 0, seedCount);
+    propagate(map, seeds, seedCount);
+  }
+
+  /**
+   * Repairs the field after a cell became walkable, by spreading the shorter
+   * routes through it.
+   * @param map The map the field is for, already holding the cell
+   * @param x The x distance of the cell from the anthill
+   * @param y The y distance of the cell from the anthill
+   */
+  void cellOpened(WorldMap map, int x, int y){
+    if(stale || !covers(map)) return;
+    int cell = (y - minY) * width + (x - minX);
+    if(goal.isGoal(x, y)){
+      distance[cell] = 0;
+      direction[cell] = AT_GOAL;
+    }else{
+      for(int d = 0; d < 4; d++){
+        int next = neighbor(cell, d);
+        if(next < 0 || distance[next] == UNREACHED) continue;
+        if(distance[next] + 1 < distance[cell]){
+          distance[cell] = distance[next] + 1;
+          direction[cell] = (byte)d;
+        }
+      }
+      if(distance[cell] == UNREACHED) return;
+    }
+    long[] seeds = {((long)distance[cell] << 32) | cell};
+    propagate(map, seeds, 1);
+  }
+
+  /**
+   * Rebuilds the field if it is stale or the map has grown.
+   */
+  private void refresh(WorldMap map){
+    if(!stale && covers(map)) return;
+    minX = map.getMinX();
+    minY = map.getMinY();
+    width = map.getWidth();
+    height = map.getHeight();
+    int cells = width * height;
+    if(distance.length < cells){
+      distance = new int[cells];
+      direction = new byte[cells];
+      queue = new int[cells];
+      mark = new int[cells];
+      markId = 0;
+    }
+    Arrays.fill(distance, 0, cells, UNREACHED);
+    Arrays.fill(direction, 0, cells, NONE);
+
+    // Every known goal is a source.
+    int tail = 0;
+    for(int cy = 0; cy < height; cy++){
+      for(int cx = 0; cx < width; cx++){
+        if(map.isPassable(cx + minX, cy + minY) && 
+           goal.isGoal(cx + minX, cy + minY)){
+          int cell = cy * width + cx;
+          distance[cell] = 0;
+          direction[cell] = AT_GOAL;
+          queue[tail++] = cell;
+        }
+      }
+    }
+    search(map, tail);
+    stale = false;
+  }
+
+  /**
+   * A breadth first search from the first cells of the queue, which must all
+   * be at the same distance.
+   */
+  private void search(WorldMap map, int tail){
+    for(int head = 0; head < tail; head++){
+      int cell = queue[head];
+      for(int d = 0; d < 4; d++){
+        int next = neighbor(cell, d);
+        if(next < 0 || distance[next] != UNREACHED) continue;
+        if(!passable(map, next)) continue;
+        distance[next] = distance[cell] + 1;
+        direction[next] = (byte)((d + 2) % 4);
+        queue[tail++] = next;
+      }
+    }
+  }
+
+  /**
+   * A breadth first search from seed cells at different distances. The seeds
+   * are sorted by distance, and are taken in turn with the cells they reach so
+   * that cells are always expanded in order of distance.
+   * @param seeds The seeds, with the distance in the high bits and the cell in
+   * the low bits
+   */
+  private void propagate(WorldMap map, long[] seeds, int seedCount){
+    int head = 0, tail = 0, s = 0;
+    while(s < seedCount || head < tail){
+      int cell;
+      if(head == tail || 
+         (s < seedCount && (seeds[s] >>> 32) <= distance[queue[head]])){
+        cell = (int)seeds[s++];
+        if(distance[cell] != (int)(seeds[s - 1] >>> 32)) continue;
+      }else{
+        cell = queue[head++];
+      }
+      for(int d = 0; d < 4; d++){
+        int next = neighbor(cell, d);
+        if(next < 0 || distance[next] <= distance[cell] + 1) continue;
+        if(!passable(map, next)) continue;
+        distance[next] = distance[cell] + 1;
+        direction[next] = (byte)((d + 2) % 4);
+        queue[tail++] = next;
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the cell next to another, or -1 if it is outside the
+   * field.
+   */
+  private int neighbor(int cell, int d){
+    int cx = cell % width + AStarPlanner.DX[d];
+    int cy = cell / width + AStarPlanner.DY[d];
+    if(cx < 0 || cy < 0 || cx >= width || cy >= height) return -1;
+    return cy * width + cx;
+  }
+
+  /**
+   * Returns wether an ant can walk onto a cell of the field.
+   */
+  private boolean passable(WorldMap map, int cell){
+    return map.isPassable(cell % width + minX, cell / width + minY);
+  }
+
+  /**
+   * Returns wether the field still covers the whole map.
+   */
+  private boolean covers(WorldMap map){
+    return minX == map.getMinX() && minY == map.getMinY() &&
+           width == map.getWidth() && height == map.getHeight();
+  }
+}
@@ -0,0 +1,319 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The food each ant has said it is on its way to collect. Ants pass their
+ * claims along with their maps, so a gatherer can skip food that enough other
+ * ants are already heading for. Every claim expires a little after the ant
+ * expected to arrive, so an ant that never turns up doesn't hold food forever.
+ * The claims are kept in parallel arrays, one entry per ant, with two open
+ * addressing tables beside them: one finds an ant's claim, and the other the
+ * claims on a cell, so neither merging claims nor checking food during a
+ * search has to look through all of them.
+ */
+public class FoodClaims{
+  /**
+   * How many timesteps past its expected arrival a claim is still honored.
+   */
+  public static final int EXPIRY = 15;
+
+  /**
+   * The ant that made each claim.
+   */
+  private int[] owners = new int[8];
+
+  /**
+   * Increases every time an ant changes its claim, so older copies of a claim
+   * passed around by other ants never replace newer ones.
+   */
+  private int[] versions = new int[8];
+
+  /**
+   * The x distance of each claimed cell from the anthill.
+   */
+  private int[] xs = new int[8];
+
+  /**
+   * The y distance of each claimed cell from the anthill.
+   */
+  private int[] ys = new int[8];
+
+  /**
+   * The timestep each ant expects to arrive at its cell.
+   */
+  private int[] arrivals = new int[8];
+
+  /**
+   * The amount of food each ant claimed. Zero once the claim is released.
+   */
+  private int[] amounts = new int[8];
+
+  /**
+   * The number of claims held.
+   */
+  private int size = 0;
+
+  /**
+   * The index of each ant's claim plus one, by owner, or zero if the entry
+   * is empty. Kept at most half full.
+   */
+  private int[] byOwner = new int[16];
+
+  /**
+   * The index of the first claim on each cell plus one, by cell, or zero if
+   * the entry is empty. Only claims with food are in it. Rebuilt when it is
+   * next needed after the claims change.
+   */
+  private int[] byCell = new int[16];
+
+  /**
+   * The index of the next claim on the same cell plus one, or zero if it is
+   * the last one.
+   */
+  private int[] nextOnCell = new int[8];
+
+  /**
+   * True if byCell is out of date.
+   */
+  private boolean cellsChanged = false;
+
+  /**
+   * Records a claim, replacing any older claim by the same ant.
+   * @param owner The ant making the claim
+   * @param version The claim's version, newer claims have larger versions
+   * @param x The x distance of the cell from the anthill
+   * @param y The y distance of the cell from the anthill
+   * @param arrival The timestep the ant expects to arrive
+   * @param amount The amount of food claimed
+   */
+  public void put(int owner, int version, int x, int y, int arrival, 
+                  int amount){
+    int i = indexOf(owner);
+    if(i < 0){
+      if(size == owners.length) grow();
+      i = size++;
+      owners[i] = owner;
+      addOwner(i);
+    }else if(versions[i] >= version){
+      return;
+    }
+    versions[i] = version;
+    xs[i] = x;
+    ys[i] = y;
+    arrivals[i] = arrival;
+    amounts[i] = amount;
+    cellsChanged = true;
+  }
+
+  /**
+   * Returns the food at a cell claimed by ants other than the given one.
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   * @param now The current timestep, claims that have expired don't count
+   * @param self The ant asking, whose own claim doesn't count
+   * @return The amount of food claimed
+   */
+  public int claimedAt(int x, int y, int now, int self){
+    if(cellsChanged) indexCells();
+    int mask = byCell.length - 1;
+    for(int e = hash(x, y) & mask; byCell[e] != 0; e = (e + 1) & mask){
+      int first = byCell[e] - 1;
+      if(xs[first] != x || ys[first] != y) continue;
+
+      int claimed = 0;
+      for(int i = first; i >= 0; i = nextOnCell[i] - 1){
+        if(owners[i] != self && arrivals[i] + EXPIRY >= now){
+          claimed += amounts[i];
+        }
+      }
+      return claimed;
+    }
+    return 0;
+  }
+
+  /**
+   * Shifts the claims when the ant's timestep jumps, the same way
+   * {@link WorldMap#adjustTimes(int, int)} shifts the map.
+   * @param oldTimeStep The timestep the claims were made against
+   * @param newTimeStep The new timestep
+   */
+  public void adjustTimes(int oldTimeStep, int newTimeStep){
+    int diff = newTimeStep - oldTimeStep;
+    for(int i = 0; i < size; i++){
+      arrivals[i] += diff;
+    }
+  }
+
+  /**
+   * Releases an ant's claim. The release is kept, and passed on, until the
+   * claim would have expired, so stale copies of the claim can't revive it.
+   * @param owner The ant releasing its claim
+   * @param version The release's version, newer than the claim's
+   * @param now The current timestep
+   */
+  public void release(int owner, int version, int now){
+    int i = indexOf(owner);
+    if(i < 0 || versions[i] >= version) return;
+    versions[i] = version;
+    arrivals[i] = Math.max(arrivals[i], now);
+    amounts[i] = 0;
+    cellsChanged = true;
+  }
+
+  /**
+   * Forgets the claims that have expired.
+   * @param now The current timestep
+   */
+  public void prune(int now){
+    int kept = 0;
+    for(int i = 0; i < size; i++){
+      if(arrivals[i] + EXPIRY >= now){
+        owners[kept] = owners[i];
+        versions[kept] = versions[i];
+        xs[kept] = xs[i];
+        ys[kept] = ys[i];
+        arrivals[kept] = arrivals[i];
+        amounts[kept] = amounts[i];
+        kept++;
+      }
+    }
+    if(kept == size) return;
+    size = kept;
+    indexOwners();
+    cellsChanged = true;
+  }
+
+  /**
+   * Writes the claims that haven't expired, including released ones so the
+   * release spreads. The expired ones are forgotten first, so a message only
+   * grows with the ants that have claimed food lately, not every ant the ant
+   * has ever heard of.
+   * @param dataWriter The stream we are writing to
+   * @param now The current timestep
+   */
+  public void write(DataOutputStream dataWriter, int now) throws IOException{
+    prune(now);
+    dataWriter.writeInt(size);
+    for(int i = 0; i < size; i++){
+      dataWriter.writeInt(owners[i]);
+      dataWriter.writeInt(versions[i]);
+      dataWriter.writeInt(xs[i]);
+      dataWriter.writeInt(ys[i]);
+      dataWriter.writeInt(arrivals[i]);
+      dataWriter.writeInt(amounts[i]);
+    }
+  }
+
+  /**
+   * Reads the claims written by another ant and merges them into ours.
+   * @param dataReader The stream we are reading from
+   * @param offset Added to the other ant's timesteps to line them up with ours
+   */
+  public void read(DataInputStream dataReader, int offset) throws IOException{
+    int count = dataReader.readInt();
+    for(int i = 0; i < count; i++){
+      int owner = dataReader.readInt();
+      int version = dataReader.readInt();
+      int x = dataReader.readInt();
+      int y = dataReader.readInt();
+      int arrival = dataReader.readInt();
+      int amount = dataReader.readInt();
+      put(owner, version, x, y, arrival + offset, amount);
+    }
+  }
+
+  /**
+   * Returns the number of claims held.
+   */
+  public int size(){
+    return size;
+  }
+
+  /**
+   * Finds the claim made by an ant.
+   * @return The claim's index, or -1 if the ant has no claim
+   */
+  private int indexOf(int owner){
+    int mask = byOwner.length - 1;
+    for(int e = hash(owner) & mask; byOwner[e] != 0; e = (e + 1) & mask){
+      if(owners[byOwner[e] - 1] == owner) return byOwner[e] - 1;
+    }
+    return -1;
+  }
+
+  /**
+   * Adds a claim to the table of owners.
+   */
+  private void addOwner(int i){
+    int mask = byOwner.length - 1;
+    int e = hash(owners[i]) & mask;
+    while(byOwner[e] != 0){
+      e = (e + 1) & mask;
+    }
+    byOwner[e] = i + 1;
+  }
+
+  /**
+   * Rebuilds the table of owners, after the claims have moved.
+   */
+  private void indexOwners(){
+    Arrays.fill(byOwner, 0);
+    for(int i = 0; i < size; i++){
+      addOwner(i);
+    }
+  }
+
+  /**
+   * Rebuilds the table of cells, chaining the claims on each cell together.
+   */
+  private void indexCells(){
+    Arrays.fill(byCell, 0);
+    int mask = byCell.length - 1;
+    for(int i = 0; i < size; i++){
+      if(amounts[i] == 0) continue;
+      int e = hash(xs[i], ys[i]) & mask;
+      while(byCell[e] != 0 && 
+            (xs[byCell[e] - 1] != xs[i] || ys[byCell[e] - 1] != ys[i])){
+        e = (e + 1) & mask;
+      }
+      nextOnCell[i] = byCell[e];
+      byCell[e] = i + 1;
+    }
+    cellsChanged = false;
+  }
+
+  /**
+   * Doubles the room for claims.
+   */
+  private void grow(){
+    int capacity = owners.length * 2;
+    owners = Arrays.copyOf(owners, capacity);
+    versions = Arrays.copyOf(versions, capacity);
+    xs = Arrays.copyOf(xs, capacity);
+    ys = Arrays.copyOf(ys, capacity);
+    arrivals = Arrays.copyOf(arrivals, capacity);
+    amounts = Arrays.copyOf(amounts, capacity);
+    nextOnCell = new int[capacity];
+    byOwner = new int[capacity * 2];
+    byCell = new int[capacity * 2];
+    indexOwners();
+    cellsChanged = true;
+  }
+
+  /**
+   * Spreads an owner over a table.
+   */
+  private static int hash(int key){
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Spreads a cell over a table.
+   */
+  private static int hash(int x, int y){
+    return hash(x * 0x10001 ^ y);
+  }
+}
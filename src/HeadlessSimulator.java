@@ -0,0 +1,608 @@
+import ants.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Runs a game of ants without any display, so that ants can be driven for
+ * many ticks on a server and their throughput measured. The rules follow
+ * AntsSimulator.jar: every tick each ant is asked for an action, and whenever
+ * an ant moves onto a tile with other ants, they exchange messages.
+ */
+public class HeadlessSimulator{
+  /**
+   * The amount of food that has to be brought to the anthill to win.
+   */
+  public static final int WINNING_AMOUNT_OF_FOOD = 500;
+
+  /**
+   * The world that the game is played on.
+   */
+  private SimWorld world;
+
+  /**
+   * The Ant implementation we are running.
+   */
+  private Class<? extends Ant> antClass;
+
+  /**
+   * A new ant is spawned every turnsPerNewAnt turns. Zero disables spawning.
+   */
+  private int turnsPerNewAnt;
+
+  /**
+   * Every ant in the game, in the order they were spawned.
+   */
+  private ArrayList<AntState> ants = new ArrayList<AntState>();
+
+  /**
+   * Surroundings for each tile, created the first time an ant stands there.
+   */
+  private TileSurroundings[][] surroundings;
+
+  /**
+   * The current turn. Like the GUI simulator, the first turn is turn 1.
+   */
+  private int turn = 1;
+
+  /**
+   * The turn on which the game was won, or -1 if it hasn't been won yet.
+   */
+  private int wonOnTurn = -1;
+
+  /**
+   * The amount of food dropped off on the anthill.
+   */
+  private int foodDelivered = 0;
+
+  /**
+   * The number of actions that the simulator refused to carry out.
+   */
+  private int invalidActions = 0;
+
+  /**
+   * The wall-clock time spent inside tick(), in nanoseconds.
+   */
+  private long elapsedNanos = 0;
+
+  /**
+   * The wall-clock time spent inside the ants' getAction, in nanoseconds.
+   */
+  private long actionNanos = 0;
+
+  /**
+   * The number of times getAction has been called.
+   */
+  private long actionCalls = 0;
+
+  /**
+   * The total size of every message sent between ants, in bytes.
+   */
+  private long messageBytes = 0;
+
+  /**
+   * Seeds each new ant that implements Seedable, so games are reproducible.
+   */
+  private Random seeds;
+
+  /**
+   * If not null, every ant is wrapped in a RecordingAnt that logs to this
+   * directory.
+   */
+  private File recordDirectory;
+
+  /**
+   * The map every new PlanningAnt starts from, or null to start them knowing
+   * nothing.
+   */
+  private WorldMap checkpoint;
+
+  /**
+   * This keeps track of where an ant is and whether it is carrying food.
+   */
+  private static class AntState{
+    /**
+     * The ant itself.
+     */
+    public Ant ant;
+
+    /**
+     * The x coordinate of the tile the ant is on.
+     */
+    public int x;
+
+    /**
+     * The y coordinate of the tile the ant is on.
+     */
+    public int y;
+
+    /**
+     * True if the ant is carrying food.
+     */
+    public boolean carrying = false;
+
+    /**
+     * Primary constructor.
+     * @param ant The ant
+     * @param x The starting x coordinate
+     * @param y The starting y coordinate
+     */
+    AntState(Ant ant, int x, int y){
+      this.ant = ant;
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  /**
+   * The surroundings of a single tile. The tiles are live, so an instance can
+   * be handed to every ant that stands on the tile.
+   */
+  private static class TileSurroundings implements Surroundings{
+    /**
+     * The tile the ant is standing on.
+     */
+    private Tile current;
+
+    /**
+     * The neighbouring tiles, indexed by Direction.ordinal().
+     */
+    private Tile[] neighbours;
+
+    /**
+     * Primary constructor.
+     * @param current The tile the ant is standing on
+     * @param neighbours The neighbouring tiles, indexed by
+     * Direction.ordinal()
+     */
+    TileSurroundings(Tile current, Tile[] neighbours){
+      this.current = current;
+      this.neighbours = neighbours;
+    }
+
+    @Override
+    public Tile getCurrentTile(){
+      return current;
+    }
+
+    @Override
+    public Tile getTile(Direction direction){
+      return neighbours[direction.ordinal()];
+    }
+  }
+
+  /**
+   * Primary constructor. Sets up the world and spawns the starting ants on the
+   * anthill.
+   * @param world The world to play on. The simulator modifies it as the game
+   * goes on, so each game needs its own.
+   * @param antClass The Ant implementation to run
+   * @param startingAnts The number of ants on the anthill at the start
+   * @param turnsPerNewAnt A new ant is spawned every turnsPerNewAnt turns.
+   * Zero disables spawning.
+   * @param seed Seeds every ant that implements Seedable
+   */
+  HeadlessSimulator(SimWorld world, Class<? extends Ant> antClass, 
+                    int startingAnts, int turnsPerNewAnt, long seed){
+    this(world, antClass, startingAnts, turnsPerNewAnt, seed, null);
+  }
+
+  /**
+   * Sets up a game that records the input of every ant.
+   * @param world The world to play on. The simulator modifies it as the game
+   * goes on, so each game needs its own.
+   * @param antClass The Ant implementation to run
+   * @param startingAnts The number of ants on the anthill at the start
+   * @param turnsPerNewAnt A new ant is spawned every turnsPerNewAnt turns.
+   * Zero disables spawning.
+   * @param seed Seeds every ant that implements Seedable
+   * @param recordDirectory If not null, each ant's input is logged to
+   * ant-N.log in this directory, where N is the order it was spawned in
+   */
+  HeadlessSimulator(SimWorld world, Class<? extends Ant> antClass, 
+                    int startingAnts, int turnsPerNewAnt, long seed,
+                    File recordDirectory){
+    this(world, antClass, startingAnts, turnsPerNewAnt, seed, 
+         recordDirectory, null);
+  }
+
+  /**
+   * Sets up a game whose ants start from what an earlier game on the same
+   * world learnt.
+   * @param world The world to play on. The simulator modifies it as the game
+   * goes on, so each game needs its own.
+   * @param antClass The Ant implementation to run
+   * @param startingAnts The number of ants on the anthill at the start
+   * @param turnsPerNewAnt A new ant is spawned every turnsPerNewAnt turns.
+   * Zero disables spawning.
+   * @param seed Seeds every ant that implements Seedable
+   * @param recordDirectory If not null, each ant's input is logged to
+   * ant-N.log in this directory, where N is the order it was spawned in
+   * @param checkpoint If not null, every PlanningAnt starts from a copy of
+   * this map (see WorldMap.readCheckpoint())
+   */
+  HeadlessSimulator(SimWorld world, Class<? extends Ant> antClass, 
+                    int startingAnts, int turnsPerNewAnt, long seed,
+                    File recordDirectory, WorldMap checkpoint){
+    this.world = world;
+    this.recordDirectory = recordDirectory;
+    this.checkpoint = checkpoint;
+    this.seeds = new Random(seed);
+    this.antClass = antClass;
+    this.turnsPerNewAnt = turnsPerNewAnt;
+    this.surroundings = 
+      new TileSurroundings[world.getWidth()][world.getHeight()];
+    for(int i = 0; i < startingAnts; i++){
+      spawnAnt();
+    }
+  }
+
+  /**
+   * Runs the game for the given number of ticks.
+   * @param ticks The number of ticks to run
+   */
+  public void run(int ticks){
+    for(int i = 0; i < ticks; i++){
+      tick();
+    }
+  }
+
+  /**
+   * Runs a single turn of the game. 
+   */
+  public void tick(){
+    long start = System.nanoTime();
+    if(turnsPerNewAnt > 0 && turn % turnsPerNewAnt == 0){
+      spawnAnt();
+    }
+
+    for(int i = 0; i < ants.size(); i++){
+      AntState state = ants.get(i);
+      Action action;
+      Surroundings around = getSurroundings(state.x, state.y);
+      long actionStart = System.nanoTime();
+      try{
+        action = state.ant.getAction(around);
+      }catch(RuntimeException e){
+        e.printStackTrace();
+        invalidActions++;
+        continue;
+      }finally{
+        actionNanos += System.nanoTime() - actionStart;
+        actionCalls++;
+      }
+      perform(state, action);
+    }
+
+    if(wonOnTurn < 0 && foodDelivered >= WINNING_AMOUNT_OF_FOOD){
+      wonOnTurn = turn;
+    }
+    turn++;
+    elapsedNanos += System.nanoTime() - start;
+  }
+
+  /**
+   * Carries out an action for an ant, if the rules allow it.
+   * @param state The ant taking the action
+   * @param action The action it wants to take
+   */
+  private void perform(AntState state, Action action){
+    SimTile tile = world.getTile(state.x, state.y);
+    if(action == Action.HALT){
+      return;
+    }else if(action == Action.DROP_OFF){
+      if(!state.carrying){
+        invalidActions++;
+        return;
+      }
+      tile.incrementFood();
+      state.carrying = false;
+      if(tile.isHome()) foodDelivered++;
+    }else if(action == Action.GATHER){
+      if(state.carrying || tile.getAmountOfFood() == 0){
+        invalidActions++;
+        return;
+      }
+      tile.decrementFood();
+      state.carrying = true;
+      if(tile.isHome()) foodDelivered--;
+    }else if(action == null || action.getDirection() == null){
+      invalidActions++;
+    }else{
+      int nx = state.x, ny = state.y;
+      switch(action.getDirection()){
+        case NORTH:
+          ny -= 1;
+          break;
+        case EAST:
+          nx += 1;
+          break;
+        case SOUTH:
+          ny += 1;
+          break;
+        case WEST:
+          nx -= 1;
+      }
+      SimTile next = world.getTile(nx, ny);
+      if(!next.isTravelable()){
+        invalidActions++;
+        return;
+      }
+      tile.removeAnt(state.ant);
+      next.addAnt(state.ant);
+      state.x = nx;
+      state.y = ny;
+
+      // Ants that meet on a tile talk to each other.
+      if(next.getNumAnts() > 1){
+        exchange(state.ant, next.getAnts());
+      }
+    }
+  }
+
+  /**
+   * Has an ant that just arrived on a tile swap messages with every other ant
+   * on that tile.
+   * @param arriving The ant that just arrived
+   * @param others All the ants on the tile, including the arriving one
+   */
+  private void exchange(Ant arriving, ArrayList<Ant> others){
+    byte[] message = arriving.send();
+    for(int i = 0; i < others.size(); i++){
+      Ant other = others.get(i);
+      if(other == arriving) continue;
+      byte[] reply = other.send();
+      arriving.receive(reply);
+      other.receive(message);
+      messageBytes += length(message) + length(reply);
+    }
+  }
+
+  /**
+   * Returns the length of a message. Ants may send null.
+   */
+  private static int length(byte[] message){
+    return message == null ? 0 : message.length;
+  }
+
+  /**
+   * Gets the surroundings of the given tile, creating them if needed.
+   * @param x The x coordinate of the tile
+   * @param y The y coordinate of the tile
+   */
+  private Surroundings getSurroundings(int x, int y){
+    TileSurroundings s = surroundings[x][y];
+    if(s == null){
+      Tile[] neighbours = new Tile[4];
+      neighbours[Direction.NORTH.ordinal()] = world.getTile(x, y - 1);
+      neighbours[Direction.EAST.ordinal()] = world.getTile(x + 1, y);
+      neighbours[Direction.SOUTH.ordinal()] = world.getTile(x, y + 1);
+      neighbours[Direction.WEST.ordinal()] = world.getTile(x - 1, y);
+      s = new TileSurroundings(world.getTile(x, y), neighbours);
+      surroundings[x][y] = s;
+    }
+    return s;
+  }
+
+  /**
+   * Creates a new ant on the anthill.
+   */
+  private void spawnAnt(){
+    Ant ant;
+    try{
+      ant = antClass.getDeclaredConstructor().newInstance();
+    }catch(Exception e){
+      throw new RuntimeException("Unable to create " + antClass.getName(), e);
+    }
+    if(checkpoint != null && ant instanceof PlanningAnt){
+      ((PlanningAnt)ant).startFrom(checkpoint);
+    }
+    if(recordDirectory != null){
+      File log = new File(recordDirectory, "ant-" + ants.size() + ".log");
+      try{
+        ant = new RecordingAnt(ant, log);
+      }catch(IOException e){
+        throw new RuntimeException("Unable to record to " + log, e);
+      }
+    }
+    if(ant instanceof Seedable){
+      ((Seedable)ant).setSeed(seeds.nextLong());
+    }
+    AntState state = new AntState(ant, world.getHomeX(), world.getHomeY());
+    world.getTile(state.x, state.y).addAnt(ant);
+    ants.add(state);
+  }
+
+  /**
+   * Finishes writing the logs of every recorded ant.
+   */
+  public void closeRecordings() throws IOException{
+    for(AntState state : ants){
+      if(state.ant instanceof RecordingAnt){
+        ((RecordingAnt)state.ant).close();
+      }
+    }
+  }
+
+  /**
+   * Writes everything the colony has learnt about the world to a checkpoint
+   * that later games on the same world start from. The maps of all of the
+   * ants that keep one are merged first.
+   * @param file The file to write
+   */
+  public void writeCheckpoint(File file) throws IOException{
+    WorldMap colony = new WorldMap(5);
+    for(AntState state : ants){
+      Ant ant = state.ant;
+      if(ant instanceof RecordingAnt) ant = ((RecordingAnt)ant).getAnt();
+      if(ant instanceof PlanningAnt){
+        colony.mergeInto(((PlanningAnt)ant).getMap());
+      }
+    }
+    colony.writeCheckpoint(file);
+  }
+
+  /**
+   * Returns the number of ticks that have been run.
+   */
+  public int getTicks(){
+    return turn - 1;
+  }
+
+  /**
+   * Returns the amount of food sitting on the anthill.
+   */
+  public int getFoodDelivered(){
+    return foodDelivered;
+  }
+
+  /**
+   * Returns the turn on which the game was won, or -1 if it hasn't been won.
+   */
+  public int getWonOnTurn(){
+    return wonOnTurn;
+  }
+
+  /**
+   * Returns the number of actions the simulator refused to carry out.
+   */
+  public int getInvalidActions(){
+    return invalidActions;
+  }
+
+  /**
+   * Returns the number of ants in the game.
+   */
+  public int getNumAnts(){
+    return ants.size();
+  }
+
+  /**
+   * Returns the wall-clock time spent running ticks, in nanoseconds.
+   */
+  public long getElapsedNanos(){
+    return elapsedNanos;
+  }
+
+  /**
+   * Returns the average wall-clock time of a getAction call, in nanoseconds.
+   */
+  public long getNanosPerAction(){
+    return actionCalls == 0 ? 0 : actionNanos / actionCalls;
+  }
+
+  /**
+   * Returns the total size of every message sent between ants, in bytes.
+   */
+  public long getMessageBytes(){
+    return messageBytes;
+  }
+
+  /**
+   * Returns the ants in the game, in the order they were spawned.
+   */
+  public ArrayList<Ant> getAnts(){
+    ArrayList<Ant> retval = new ArrayList<Ant>(ants.size());
+    for(AntState state : ants){
+      retval.add(state.ant);
+    }
+    return retval;
+  }
+
+  /**
+   * Returns the average wall-clock time per tick, in nanoseconds.
+   */
+  public long getNanosPerTick(){
+    return getTicks() == 0 ? 0 : elapsedNanos / getTicks();
+  }
+
+  /**
+   * Prints a short report of the game so far.
+   */
+  public void printReport(){
+    System.out.println("ant:            " + antClass.getName());
+    System.out.println("ticks:          " + getTicks());
+    System.out.println("ants:           " + getNumAnts());
+    System.out.println("food delivered: " + getFoodDelivered());
+    System.out.println("won on turn:    " + getWonOnTurn());
+    System.out.println("invalid:        " + getInvalidActions());
+    System.out.println("ns per tick:    " + getNanosPerTick());
+    System.out.println("ns per action:  " + getNanosPerAction());
+    System.out.println("message bytes:  " + getMessageBytes());
+  }
+
+  /**
+   * Loads a world, either from a world file or by generating one. A world of
+   * the form WIDTHxHEIGHT is generated from the seed, anything else is read
+   * as a world file.
+   * @param world The world file, or WIDTHxHEIGHT
+   * @param seed The seed used to generate the world
+   * @return The world
+   */
+  public static SimWorld loadWorld(String world, long seed) throws IOException{
+    if(world.matches("\\d+x\\d+")){
+      String[] size = world.split("x");
+      return SimWorld.generate(Integer.parseInt(size[0]), 
+                               Integer.parseInt(size[1]), new Random(seed));
+    }
+    return SimWorld.load(new File(world));
+  }
+
+  /**
+   * Loads an Ant implementation by name.
+   * @param name The class name of the ant
+   * @return The ant class
+   */
+  public static Class<? extends Ant> loadAnt(String name) 
+    throws ClassNotFoundException{
+    return Class.forName(name).asSubclass(Ant.class);
+  }
+
+  /**
+   * Runs a single headless game and prints the report. If -Dants.record is
+   * set to a directory, every ant's input is logged there for AntReplayer.
+   * If -Dants.checkpoint is set to a file, the ants start from it if it
+   * exists, and what they know at the end is written back to it.
+   * Usage: HeadlessSimulator ant world [ticks] [ants] [turnsPerNewAnt] [seed]
+   */
+  public static void main(String[] args) throws Exception{
+    if(args.length < 2){
+      System.err.println("Usage: HeadlessSimulator ant world|WIDTHxHEIGHT " +
+                         "[ticks] [ants] [turnsPerNewAnt] [seed]");
+      System.exit(1);
+    }
+    int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+    int startingAnts = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+    int turnsPerNewAnt = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+    long seed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+
+    String record = System.getProperty("ants.record");
+    File recordDirectory = null;
+    if(record != null){
+      recordDirectory = new File(record);
+      recordDirectory.mkdirs();
+    }
+
+    String checkpoint = System.getProperty("ants.checkpoint");
+    WorldMap known = null;
+    if(checkpoint != null && new File(checkpoint).exists()){
+      try{
+        known = WorldMap.readCheckpoint(new File(checkpoint));
+      }catch(IOException e){
+        System.err.println("Unable to read checkpoint " + checkpoint + ": " + 
+                           e.getMessage());
+      }
+    }
+
+    HeadlessSimulator sim = 
+      new HeadlessSimulator(loadWorld(args[1], seed), loadAnt(args[0]),
+                            startingAnts, turnsPerNewAnt, seed, 
+                            recordDirectory, known);
+    sim.run(ticks);
+    sim.closeRecordings();
+    if(checkpoint != null) sim.writeCheckpoint(new File(checkpoint));
+    sim.printReport();
+    AntMetrics.dump();
+  }
+}
@@ -0,0 +1,210 @@
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates how much heap an object graph retains by walking its fields. The
+ * sizes assume a 64 bit JVM with compressed references. Fields of JDK classes
+ * can't be read from outside the JDK, so what those objects hold is estimated
+ * through their public APIs: a string counts its characters, a collection an
+ * array with a reference per element, and a map a hash table with a node per
+ * entry. The elements, keys and values are then walked like anything else.
+ * Spare capacity can't be seen that way, so collections count a little less
+ * than they really hold, and other JDK objects only count their own shell.
+ * Checked against the heap freed when a game's ants are collected, this is
+ * within a few percent, since nearly all of an ant's memory is held in
+ * arrays, flow fields kept in a map and messages kept in a list.
+ */
+public class HeapEstimator{
+  /**
+   * The size of an object header.
+   */
+  private static final int HEADER = 12;
+
+  /**
+   * The size of an array header, including the length.
+   */
+  private static final int ARRAY_HEADER = 16;
+
+  /**
+   * The size of a reference.
+   */
+  private static final int REFERENCE = 4;
+
+  /**
+   * The size of an entry of a hash map: a header, the hash, the key, the
+   * value and the next entry.
+   */
+  private static final int MAP_NODE = 32;
+
+  /**
+   * The instance fields of each class we have looked at, including the
+   * fields of its superclasses. Fields we are not allowed to read are left
+   * out. Shared by every thread, so estimates can run in parallel.
+   */
+  private static final ConcurrentHashMap<Class<?>, Field[]> fieldCache = 
+    new ConcurrentHashMap<Class<?>, Field[]>();
+
+  /**
+   * The shallow size of an instance of each class we have looked at.
+   */
+  private static final ConcurrentHashMap<Class<?>, Long> sizeCache = 
+    new ConcurrentHashMap<Class<?>, Long>();
+
+  /**
+   * Estimates the heap retained by an object and everything it references.
+   * Objects reachable more than once are only counted once. Safe to call
+   * from several threads at once.
+   * @param root The object to measure
+   * @return The estimated size in bytes
+   */
+  public static long deepSize(Object root){
+    IdentityHashMap<Object, Boolean> seen = 
+      new IdentityHashMap<Object, Boolean>();
+    ArrayDeque<Object> fringe = new ArrayDeque<Object>();
+    long total = 0;
+    if(root != null) fringe.push(root);
+
+    while(!fringe.isEmpty()){
+      Object o = fringe.pop();
+      if(seen.put(o, true) != null) continue;
+      Class<?> c = o.getClass();
+
+      if(c.isArray()){
+        int length = Array.getLength(o);
+        Class<?> type = c.getComponentType();
+        total += align(ARRAY_HEADER + (long)length * sizeOf(type));
+        if(!type.isPrimitive()){
+          for(Object element : (Object[])o){
+            if(isCounted(element)) fringe.push(element);
+          }
+        }
+        continue;
+      }
+
+      total += shallowSize(c);
+      if(c.getModule().isNamed()){
+        total += insides(o, fringe);
+        continue;
+      }
+      for(Field f : fields(c)){
+        try{
+          Object value = f.get(o);
+          if(isCounted(value)) fringe.push(value);
+        }catch(IllegalAccessException e){
+          // Should not happen, fields() only returns readable fields.
+        }
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Estimates what a JDK object holds beyond its shell, and adds what it
+   * refers to to the fringe.
+   * @param o The object
+   * @param fringe The objects still to be walked
+   * @return The estimated size in bytes, not counting the shell
+   */
+  private static long insides(Object o, ArrayDeque<Object> fringe){
+    if(o instanceof String){
+      return align(ARRAY_HEADER + (long)((String)o).length());
+    }
+    if(o instanceof Collection){
+      Collection<?> items = (Collection<?>)o;
+      for(Object item : items){
+        if(isCounted(item)) fringe.push(item);
+      }
+      return align(ARRAY_HEADER + (long)items.size() * REFERENCE);
+    }
+    if(o instanceof Map){
+      Map<?, ?> entries = (Map<?, ?>)o;
+      for(Map.Entry<?, ?> e : entries.entrySet()){
+        if(isCounted(e.getKey())) fringe.push(e.getKey());
+        if(isCounted(e.getValue())) fringe.push(e.getValue());
+      }
+      if(entries.isEmpty()) return 0;
+      // Tables are powers of two, at most three quarters full.
+      long table = Long.highestOneBit(entries.size() * 4L / 3) * 2;
+      return align(ARRAY_HEADER + table * REFERENCE) + 
+             (long)entries.size() * MAP_NODE;
+    }
+    return 0;
+  }
+
+  /**
+   * Decides if an object should be counted. Classes and enum constants are
+   * shared by everyone, so they are not part of anyone's footprint.
+   */
+  private static boolean isCounted(Object o){
+    return o != null && !(o instanceof Class) && !(o instanceof Enum);
+  }
+
+  /**
+   * Rounds a size up to the 8 byte object alignment.
+   */
+  private static long align(long size){
+    return (size + 7) & ~7L;
+  }
+
+  /**
+   * Returns the size of a field or array element of the given type.
+   */
+  private static int sizeOf(Class<?> type){
+    if(type == long.class || type == double.class) return 8;
+    if(type == int.class || type == float.class) return 4;
+    if(type == short.class || type == char.class) return 2;
+    if(type == byte.class || type == boolean.class) return 1;
+    return REFERENCE;
+  }
+
+  /**
+   * Returns the shallow size of an instance of the given class.
+   */
+  private static long shallowSize(Class<?> c){
+    Long size = sizeCache.get(c);
+    if(size == null){
+      long total = HEADER;
+      for(Class<?> k = c; k != null; k = k.getSuperclass()){
+        for(Field f : k.getDeclaredFields()){
+          if(!Modifier.isStatic(f.getModifiers())) total += sizeOf(f.getType());
+        }
+      }
+      size = align(total);
+      sizeCache.put(c, size);
+    }
+    return size;
+  }
+
+  /**
+   * Returns the readable reference fields of the given class.
+   */
+  private static Field[] fields(Class<?> c){
+    Field[] retval = fieldCache.get(c);
+    if(retval == null){
+      ArrayList<Field> found = new ArrayList<Field>();
+      for(Class<?> k = c; k != null; k = k.getSuperclass()){
+        for(Field f : k.getDeclaredFields()){
+          if(Modifier.isStatic(f.getModifiers()) || f.getType().isPrimitive()){
+            continue;
+          }
+          try{
+            f.setAccessible(true);
+            found.add(f);
+          }catch(RuntimeException e){
+            // JDK internals are not open to us, so we skip them.
+          }
+        }
+      }
+      retval = found.toArray(new Field[0]);
+      fieldCache.put(c, retval);
+    }
+    return retval;
+  }
+}
@@ -2,9 +2,26 @@ import ants.*;
 
 /**
  * This class stores a move. Which consists of an action and the new position
- * after the action.
+ * after the action. A move can also be packed into an int, with the direction
+ * in the lowest two bits and the new position above them, so the planners can
+ * pass moves around without making any objects.
  */
 public class Move{
+  /**
+   * The moves in Direction.values() order. Use these rather than
+   * Action.move(), which makes a new Action every time it is called.
+   */
+  static final Action[] ACTIONS = {
+    Action.move(Direction.NORTH), Action.move(Direction.EAST),
+    Action.move(Direction.SOUTH), Action.move(Direction.WEST)
+  };
+
+  /**
+   * The largest distance from the anthill, in either direction, that a packed
+   * move can hold.
+   */
+  static final int MAX_PACKED = (1 << 14) - 1;
+
   /**
    * The action we are taking.
    */
@@ -41,6 +58,69 @@ public class Move{
     return p;
   }
 
+  /**
+   * Returns the shared move action for a direction.
+   * @param d The direction to move in
+   * @return The action
+   */
+  static Action action(Direction d){
+    return ACTIONS[d.ordinal()];
+  }
+
+  /**
+   * Packs a move into an int. The new position must be within MAX_PACKED of
+   * the anthill, since anything further would wrap around to a different
+   * position.
+   * @param d The index of the direction in Direction.values()
+   * @param x The x coordinate after the move
+   * @param y The y coordinate after the move
+   * @return The packed move
+   * @throws IllegalArgumentException If a coordinate is out of range
+   */
+  static int pack(int d, int x, int y){
+    if(Math.abs(x) > MAX_PACKED || Math.abs(y) > MAX_PACKED){
+      throw new IllegalArgumentException("(" + x + ", " + y + 
+                                         ") is too far away to pack");
+    }
+    return (x << 17) | ((y & 0x7FFF) << 2) | d;
+  }
+
+  /**
+   * Gets the direction index out of a packed move.
+   * @param packed The packed move
+   * @return The index of the direction in Direction.values()
+   */
+  static int unpackDirection(int packed){
+    return packed & 3;
+  }
+
+  /**
+   * Gets the shared action out of a packed move.
+   * @param packed The packed move
+   * @return The action
+   */
+  static Action unpackAction(int packed){
+    return ACTIONS[packed & 3];
+  }
+
+  /**
+   * Gets the x coordinate after a packed move.
+   * @param packed The packed move
+   * @return The x coordinate
+   */
+  static int unpackX(int packed){
+    return packed >> 17;
+  }
+
+  /**
+   * Gets the y coordinate after a packed move.
+   * @param packed The packed move
+   * @return The y coordinate
+   */
+  static int unpackY(int packed){
+    return (packed << 15) >> 17;
+  }
+
   /**
    * Converts to a string.
    */
@@ -0,0 +1,172 @@
+import ants.*;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out an ant's next plan on a background thread while it is still
+ * following the last few steps of its current one, like the way home while
+ * it walks to food. The search runs on a snapshot of the ant's map, and the
+ * plan is only handed over if the ant ended up where the search started and
+ * its map hasn't changed shape since. A plan that isn't ready in time is never waited for;
+ * the ant just plans as usual.
+ *
+ * All ants share one small pool of daemon threads. When its queue is full,
+ * new searches are dropped rather than held up.
+ */
+public class PlanSpeculator{
+  /**
+   * The number of steps left in a plan when the next plan is started. The
+   * closer to the end of the plan, the less likely the ant is to learn
+   * something that spoils the next one, or to drop its plan altogether.
+   */
+  static final int STEPS_AHEAD = 4;
+
+  /**
+   * The number of searches that can wait for a thread.
+   */
+  private static final int QUEUE_SIZE = 256;
+
+  /**
+   * The threads shared by every ant's speculator.
+   */
+  private static final ThreadPoolExecutor POOL = createPool();
+
+  /**
+   * Searches for the plans. Only used by one search at a time.
+   */
+  private final Planner planner = new AStarPlanner();
+
+  /**
+   * Breaks ties in the searches. Seeded from the ant for every search.
+   */
+  private final Random rand = new Random();
+
+  /**
+   * The search in flight or finished, or null if there is none.
+   */
+  private FutureTask<ArrayDeque<Action>> pending;
+
+  /**
+   * The position the pending search starts from.
+   */
+  private int startX, startY;
+
+  /**
+   * The goal of the pending search.
+   */
+  private SearchGoal goal;
+
+  /**
+   * The shape version of the map the pending search runs on.
+   */
+  private int shapeVersion;
+
+  /**
+   * Starts a search in the background, unless the last one is still
+   * running.
+   * @param map The ant's map, which is copied before the search starts
+   * @param x The x distance of the start from the anthill
+   * @param y The y distance of the start from the anthill
+   * @param hasFood True if the ant will be carrying food at the start
+   * @param g The goal, which is tested on another thread and must not depend
+   * on anything that changes
+   * @param seed Seeds the tie breaking for the search
+   */
+  public void start(WorldMap map, final int x, final int y,
+                    final boolean hasFood, final SearchGoal g,
+                    final long seed){
+    if(pending != null && !pending.isDone()) return;
+
+    final WorldMap snapshot = map.snapshot();
+    this.startX = x;
+    this.startY = y;
+    this.goal = g;
+    this.shapeVersion = snapshot.getShapeVersion();
+    this.pending = new FutureTask<ArrayDeque<Action>>(
+      new Callable<ArrayDeque<Action>>(){
+        @Override
+        public ArrayDeque<Action> call(){
+          rand.setSeed(seed);
+          return planner.plan(snapshot, x, y, hasFood, g, rand);
+        }
+      });
+    if(AntMetrics.ENABLED) AntMetrics.SPECULATIONS_STARTED.increment();
+    POOL.execute(pending);
+  }
+
+  /**
+   * Hands over the plan of the last search if it is finished and still
+   * holds. Either way, the search is forgotten.
+   * @param map The ant's map
+   * @param x The x distance of the ant from the anthill
+   * @param y The y distance of the ant from the anthill
+   * @param g The goal the ant wants a plan for
+   * @return The plan, or null if there is no usable plan
+   */
+  public ArrayDeque<Action> take(WorldMap map, int x, int y, SearchGoal g){
+    if(pending == null) return null;
+    FutureTask<ArrayDeque<Action>> done = pending;
+    if(!done.isDone()){
+      // Leave it to finish, so the planner isn't shared by two searches.
+      if(AntMetrics.ENABLED) AntMetrics.SPECULATIONS_MISSED.increment();
+      return null;
+    }
+    pending = null;
+
+    ArrayDeque<Action> plan = null;
+    if(!done.isCancelled() && x == startX && y == startY && g == goal &&
+       map.getShapeVersion() == shapeVersion){
+      try{
+        plan = done.get();
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+      }catch(ExecutionException e){
+        System.err.println("Speculative plan failed: " + e.getCause());
+      }
+    }
+    if(AntMetrics.ENABLED){
+      if(plan != null){
+        AntMetrics.SPECULATIONS_USED.increment();
+      }else{
+        AntMetrics.SPECULATIONS_MISSED.increment();
+      }
+    }
+    return plan;
+  }
+
+  /**
+   * Creates the shared pool, with a thread for every core but one.
+   */
+  private static ThreadPoolExecutor createPool(){
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(
+      threads, threads, 0, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+      new ThreadFactory(){
+        private int count = 0;
+
+        @Override
+        public synchronized Thread newThread(Runnable r){
+          Thread t = new Thread(r, "plan-speculator-" + count++);
+          t.setDaemon(true);
+          return t;
+        }
+      },
+      new RejectedExecutionHandler(){
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool){
+          // Dropped searches count as finished, so the ant can start another.
+          ((FutureTask<?>)r).cancel(false);
+        }
+      });
+    return pool;
+  }
+}
@@ -0,0 +1,29 @@
+import ants.*;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * A search algorithm that finds the moves from a position to the closest goal
+ * on an ant's map. Each ant owns its own planner, so planners may keep state
+ * between searches.
+ */
+public interface Planner{
+  /**
+   * Finds the shortest sequence of moves from a position to a goal. We never
+   * plan to move into areas the map doesn't know about.
+   * @param map The ant's map of the world
+   * @param x The x distance of the start from the anthill
+   * @param y The y distance of the start from the anthill
+   * @param hasFood True if the ant is carrying food
+   * @param g The goal test
+   * @param rand Used to break ties between equally short paths
+   * @return The moves to get to the goal, or null if no goal is reachable
+   */
+  public ArrayDeque<Action> plan(WorldMap map, int x, int y, boolean hasFood,
+                                 SearchGoal g, Random rand);
+
+  /**
+   * Returns the number of positions expanded by the most recent search.
+   */
+  public int getNodesExpanded();
+}
@@ -0,0 +1,899 @@
+import ants.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * The shared engine behind the mapping ants. It keeps the ant's map up to
+ * date, trades maps with other ants, and follows plans made by a pluggable
+ * Planner. Subclasses decide what counts as food worth gathering, where food
+ * can be dropped off, and when the ant changes roles.
+ */
+public abstract class PlanningAnt implements Ant, Seedable{
+  /**
+   * If the ant has food, then it can no longer collect food
+   */
+  protected boolean hasFood = false;
+
+  /**
+   * The scout ant searches into the unknown.
+   */
+  protected boolean isScout = false;
+
+  /**
+   * This is the current timestep, as far as this ant is concerned. It starts
+   * after WorldMap.PRIOR, so everything the ant sees is newer than the
+   * checkpoint it may have started from.
+   */
+  protected int timeStep = WorldMap.PRIOR + 1;
+
+  /**
+   * This is the number of actions that the given ant has taken. Similar to
+   * timestep, but does not get modified when we talk to other ants.
+   */
+  protected int actionsTaken = 0;
+
+  /**
+   * The x distance from the anthill
+   */
+  protected int x = 0;
+
+  /**
+   * The y distance from the anthill
+   */
+  protected int y = 0;
+
+  /**
+   * This class will keep track of the world around the ants. 
+   * When two ants pass each other, they will share information and update each
+   * others' maps.
+   */
+  protected WorldMap map = new WorldMap(5);
+
+  /**
+   * The messages recieved from other ants since the last action.
+   */
+  private final ArrayList<byte[]> pending = new ArrayList<byte[]>();
+
+  /**
+   * Each ant keeps track of a plan of movements for what it is currently trying
+   * to achieve. The path is found by searching the ant's map with the planner.
+   */
+  protected ArrayDeque<Action> plan;
+
+  /**
+   * The most actions an ant waits for its map to change before it searches
+   * again. Food claims expire without changing the map.
+   */
+  private static final int MAX_WAIT = FoodClaims.EXPIRY;
+
+  /**
+   * The shape version of the map when the ant last found nothing to do, or
+   * -1 if it isn't waiting. The same searches would fail again until the map
+   * changes shape, so the ant halts instead of repeating them.
+   */
+  private int waitingOnShape = -1;
+
+  /**
+   * The action on which the ant started waiting.
+   */
+  private int waitingSince = 0;
+
+  /**
+   * Used to break ties between equally good moves. Simulators can seed it to
+   * make the ant's behavior reproducible.
+   */
+  protected Random rand = new Random();
+
+  /**
+   * Identifies this ant's food claims to the other ants.
+   */
+  private int id = rand.nextInt();
+
+  /**
+   * The food this ant and the ants it has met are on their way to collect.
+   * Passed along with the map, so gatherers spread out over the known food.
+   */
+  protected FoodClaims claims = new FoodClaims();
+
+  /**
+   * The version of this ant's latest claim.
+   */
+  private int claimVersion = 0;
+
+  /**
+   * Keeps track of the roles of the ants we meet and how long our trips
+   * take, for strategies that switch roles as the colony needs.
+   */
+  protected RoleScheduler roles = new RoleScheduler();
+
+  /**
+   * The search algorithm used to make plans.
+   */
+  private Planner planner;
+
+  /**
+   * The search algorithm used to plan trips to food and back. Null to use
+   * the planner for those too.
+   */
+  private Planner routePlanner = 
+    Boolean.getBoolean("ants.congestion") ? new CongestionPlanner() : null;
+
+  /**
+   * The name of the flow field that leads to where food is delivered.
+   */
+  static final String DELIVERY_FIELD = "deliver";
+
+  /**
+   * When true, ants carrying food follow a flow field home instead of
+   * planning a path. Defaults to the ants.flowFields system property.
+   */
+  protected boolean followFlowFields = Boolean.getBoolean("ants.flowFields");
+
+  /**
+   * The destinations of the delivery flow field.
+   */
+  private final SearchGoal deliveryGoal = new SearchGoal(){
+    @Override
+    public boolean isGoal(int x, int y){
+      return isDeliveryGoal(x, y);
+    }
+
+    @Override
+    public int estimate(int x, int y){
+      return deliveryEstimate(x, y);
+    }
+
+    @Override
+    public String planName(){
+      return "Deliver Food";
+    }
+  };
+
+  /**
+   * The search algorithm used to choose which food to go after. Null to use
+   * the route planner, which goes after the closest food.
+   */
+  private Planner foodPlanner = Boolean.getBoolean("ants.utility") ? 
+    new UtilityFoodPlanner(DELIVERY_FIELD, deliveryGoal) : null;
+
+  /**
+   * The routes this ant has planned to food and back, so repeat trips don't
+   * need a search. Null when the ants.routeCache system property is false.
+   */
+  private RouteCache routes = 
+    Boolean.getBoolean("ants.routeCache") ? new RouteCache() : null;
+
+  /**
+   * Works out the way back while the ant walks to food, when the delivery
+   * goal allows it. Null when the ants.speculate system property is false.
+   */
+  private PlanSpeculator speculator = 
+    Boolean.getBoolean("ants.speculate") ? new PlanSpeculator() : null;
+
+  /**
+   * Starts an ant on the anthill knowing nothing about the world.
+   * @param planner The search algorithm used to make plans
+   */
+  protected PlanningAnt(Planner planner){
+    this.planner = planner;
+    if(routes != null) map.addWallListener(routes);
+  }
+
+  /**
+   * Starts an ant somewhere on an already known map. Used by the benchmarks
+   * to plan on a prepared world.
+   * @param planner The search algorithm used to make plans
+   * @param map The map the ant starts out with
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   */
+  PlanningAnt(Planner planner, WorldMap map, int x, int y){
+    this.planner = planner;
+    this.map = map;
+    this.x = x;
+    this.y = y;
+    if(routes != null) map.addWallListener(routes);
+  }
+
+  /**
+   * Starts the ant from a map of a world it has played before, so it doesn't
+   * explore it all again. Must be called before the ant's first action.
+   * @param known The map to start from, usually read by
+   * WorldMap.readCheckpoint(). The ant keeps a copy, so one map can start
+   * any number of ants.
+   */
+  public void startFrom(WorldMap known){
+    this.map = known.snapshot();
+    if(routes != null) map.addWallListener(routes);
+  }
+
+  /**
+   * Returns the ant's map of the world.
+   */
+  public WorldMap getMap(){
+    return map;
+  }
+
+  /**
+   * Swaps the search algorithm used to make plans.
+   * @param planner The new planner
+   */
+  public void setPlanner(Planner planner){
+    this.planner = planner;
+  }
+
+  /**
+   * Returns the search algorithm used to make plans.
+   */
+  public Planner getPlanner(){
+    return planner;
+  }
+
+  /**
+   * Swaps the search algorithm used to plan trips to food and back, for
+   * example for a CongestionPlanner that routes around other ants. Defaults
+   * to a CongestionPlanner if the ants.congestion system property is set.
+   * @param routePlanner The new planner, or null to use the main planner
+   */
+  public void setRoutePlanner(Planner routePlanner){
+    this.routePlanner = routePlanner;
+  }
+
+  /**
+   * Swaps the search algorithm used to choose which food to go after, for
+   * example for a UtilityFoodPlanner that weighs the food against the trip.
+   * Defaults to a UtilityFoodPlanner if the ants.utility system property is
+   * set.
+   * @param foodPlanner The new planner, or null to use the route planner
+   */
+  public void setFoodPlanner(Planner foodPlanner){
+    this.foodPlanner = foodPlanner;
+  }
+
+  /**
+   * Turns on choosing food by the food expected per move of the round trip,
+   * rather than going after the closest food.
+   */
+  public void useUtilityFoodSelection(){
+    this.foodPlanner = new UtilityFoodPlanner(DELIVERY_FIELD, deliveryGoal);
+  }
+
+  /**
+   * Chooses wether ants carrying food follow a flow field home instead of
+   * planning a path.
+   * @param followFlowFields True to follow the flow field
+   */
+  public void setFollowFlowFields(boolean followFlowFields){
+    this.followFlowFields = followFlowFields;
+  }
+
+  /**
+   * Turns the route cache on or off.
+   * @param enabled True to remember routes to food and back
+   */
+  public void setRouteCache(boolean enabled){
+    if(enabled && routes == null){
+      routes = new RouteCache();
+      map.addWallListener(routes);
+    }else if(!enabled && routes != null){
+      map.removeWallListener(routes);
+      routes = null;
+    }
+  }
+
+  /**
+   * Turns working out the way back in the background on or off. Only
+   * strategies whose delivery goal never changes (see
+   * {@link #deliveryGoalIsFixed()}) make use of it.
+   * @param enabled True to plan the way back while walking to food
+   */
+  public void setSpeculativePlanning(boolean enabled){
+    if(enabled && speculator == null){
+      speculator = new PlanSpeculator();
+    }else if(!enabled){
+      speculator = null;
+    }
+  }
+
+  /**
+   * This is the subroutine to get the action for the ant to take. It returns an
+   * action based on its current plan. This operation is very quick unless the
+   * ant is forming a new plan. 
+   * @param surroundings the squares that the ant can see.
+   * @return The selected action.
+   */
+  @Override
+  public Action getAction(Surroundings surroundings){
+    if(!AntMetrics.ENABLED) return chooseAction(surroundings);
+    long start = System.nanoTime();
+    Action a = chooseAction(surroundings);
+    AntMetrics.GET_ACTION.record(System.nanoTime() - start);
+    return a;
+  }
+
+  /**
+   * Does the work of {@link #getAction(ants.Surroundings)}.
+   * @param surroundings the squares that the ant can see.
+   * @return The selected action.
+   */
+  private Action chooseAction(Surroundings surroundings){
+    // Catch up on what the ants we met since the last action told us.
+    mergeMessages();
+
+    // This will keep the surroundings updated with the new values gained from
+    // surroundings. We want to make sure that we have the most up to date
+    // information in the map. 
+    updateSurroundings(surroundings);
+
+    this.timeStep++;
+    this.actionsTaken++;
+    claims.prune(timeStep);
+
+    updateRole();
+
+    if(this.isScout){
+      // If our current plan is empty, make a new one.
+      if(plan == null || plan.isEmpty())
+        plan = intoTheUnknownPlan();
+
+      if(plan == null){
+        this.isScout = false;
+        plan = deliverFoodPlan();
+      }
+
+      // Nowhere left to explore and no way home, so wait for a new plan.
+      if(plan == null || plan.isEmpty()){
+        return this.makeMove(Action.HALT);
+      }
+      return this.makeMove(plan.pop());
+    }else{
+      // If we are on food worth taking, pick it up and start to travel back.
+      if(!hasFood && map.getFood(x, y) > 0 && isFoodGoal(x, y)){
+        claims.release(id, ++claimVersion, timeStep);
+        foodGathered();
+        plan = followFlowFields ? null : deliverFoodPlan();
+        return this.makeMove(Action.GATHER);
+      }
+
+      // If we are somewhere we can drop off food, do so and look for more.
+      if(hasFood && canDropOff(x, y)){
+        roles.droppedOff(actionsTaken);
+        foodDroppedOff();
+        plan = findFoodPlan();
+        return this.makeMove(Action.DROP_OFF);
+      }
+
+      // Ants following flow fields carry food home without planning.
+      if(hasFood && followFlowFields){
+        Action step = map.flowStep(DELIVERY_FIELD, deliveryGoal, x, y);
+        if(step != null){
+          plan = null;
+          return this.makeMove(step);
+        }
+      }
+
+      // If nothing worked last time and nothing has changed since, wait.
+      if((plan == null || plan.isEmpty()) && isWaiting()){
+        return this.makeMove(Action.HALT);
+      }
+
+      // If we don't currently have a plan, construct one.
+      if(plan == null || plan.isEmpty()){
+        if(!hasFood){
+          plan = findFoodPlan();
+        }else{
+          plan = deliverFoodPlan();
+        }
+      }
+
+      // If we can't find what we want, fall back on the strategy.
+      if(plan == null || plan.isEmpty()){
+        plan = recoverPlan();
+      }
+
+      // There is nothing the ant can do, so it waits for the map to change.
+      if(plan == null || plan.isEmpty()){
+        waitingOnShape = map.getShapeVersion();
+        waitingSince = actionsTaken;
+        return this.makeMove(Action.HALT);
+      }
+
+      // Work out the way back while the last few steps to food are taken.
+      if(speculator != null && !hasFood && 
+         plan.size() == PlanSpeculator.STEPS_AHEAD && deliveryGoalIsFixed()){
+        int end = endOf(plan);
+        speculator.start(map, Position.unpackX(end), Position.unpackY(end),
+                         true, deliveryGoal, rand.nextLong());
+      }
+
+      // Start performing the next action. 
+      Action nextMove = plan.pop();
+      
+      // Ensure that we can indeed make this move. 
+      if(map.validMove(nextMove, x, y, hasFood)){
+        return this.makeMove(nextMove);
+      }else{
+        // This would mean that a plan sent us into a wall, which should never
+        // happen.
+        System.out.println("Plan attempted an invalid move. (" + x + ", " + y +
+                           ") " + nextMove.getDirection());
+        try{
+          map.render(System.out);
+        }catch(IOException e){
+          // System.out never throws.
+        }
+        System.out.println();
+        System.exit(0);
+      }
+      return null;
+    }
+  }
+
+  ///////////////////////////////////////////////////////////
+  //                                                       // 
+  // These are the hooks that make up an ant's strategy    //
+  //                                                       //
+  ///////////////////////////////////////////////////////////
+
+  /**
+   * Returns wether food at the given position should be gathered. Only called
+   * for positions the map knows to have food.
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   */
+  protected abstract boolean isFoodGoal(int x, int y);
+
+  /**
+   * Returns wether the given position is where an ant carrying food should
+   * head for.
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   */
+  protected abstract boolean isDeliveryGoal(int x, int y);
+
+  /**
+   * Returns wether an ant carrying food may drop it off at the given
+   * position. By default that is anywhere it would deliver food to.
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   */
+  protected boolean canDropOff(int x, int y){
+    return isDeliveryGoal(x, y);
+  }
+
+  /**
+   * A lower bound on the moves from a position to the closest delivery goal,
+   * used to guide searches that take an estimate. By default that is the
+   * distance to the anthill.
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   */
+  protected int deliveryEstimate(int x, int y){
+    return Math.abs(x) + Math.abs(y);
+  }
+
+  /**
+   * Returns wether isDeliveryGoal() and deliveryEstimate() depend only on
+   * their arguments, so they can be tested on another thread while the ant
+   * carries on. False by default.
+   */
+  protected boolean deliveryGoalIsFixed(){
+    return false;
+  }
+
+  /**
+   * Called once per action, before the ant decides what to do. Strategies
+   * switch roles or adjust their goals here. Does nothing by default.
+   */
+  protected void updateRole(){
+  }
+
+  /**
+   * Ends any wait for the map to change. Strategies call this when their
+   * goals change, so the ant searches again on its next action.
+   */
+  protected void stopWaiting(){
+    waitingOnShape = -1;
+  }
+
+  /**
+   * Decides whether the ant should keep waiting. It stops once the map has
+   * changed shape or it has waited MAX_WAIT actions.
+   */
+  private boolean isWaiting(){
+    if(waitingOnShape < 0) return false;
+    if(map.getShapeVersion() != waitingOnShape || 
+       actionsTaken - waitingSince >= MAX_WAIT){
+      waitingOnShape = -1;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Called when the ant picks up food. Does nothing by default.
+   */
+  protected void foodGathered(){
+  }
+
+  /**
+   * Called when the ant drops off food. Does nothing by default.
+   */
+  protected void foodDroppedOff(){
+  }
+
+  /**
+   * Adds whatever the strategy wants to share to the message sent to other
+   * ants. Writes nothing by default.
+   * @param dataWriter The stream we are writing to
+   */
+  protected void writeStrategy(DataOutputStream dataWriter) throws IOException{
+  }
+
+  /**
+   * Reads what the other ant's strategy shared, as written by
+   * writeStrategy().
+   * @param dataReader The stream we are reading from
+   */
+  protected void readStrategy(DataInputStream dataReader) throws IOException{
+  }
+
+  /**
+   * Makes a plan when the ant can't find what it wants. By default the ant
+   * investigates unknown areas.
+   * @return The plan to follow, or null if there is nothing to do, in which
+   * case the ant waits for its map to change
+   */
+  protected ArrayDeque<Action> recoverPlan(){
+    return intoTheUnknownPlan();
+  }
+
+  /**
+   * Seeds the random number generator used to break ties while planning.
+   * @param seed The new seed
+   */
+  @Override
+  public void setSeed(long seed){
+    this.rand = new Random(seed);
+    this.id = rand.nextInt();
+  }
+
+  /**
+   * Sends data about the current ant, his timestep, and his map.
+   * @return A byte array of the data we are sending.
+   */
+  @Override
+  public byte[] send(){
+    // Pass on what we have heard too, so the claims we share are current.
+    mergeMessages();
+
+    AntEvents.Message event = new AntEvents.Message();
+    event.begin();
+    try{
+      ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
+      DataOutputStream dataWriter = new DataOutputStream(outputBytes);
+      
+      // Send the timestamp
+      dataWriter.writeInt(this.timeStep);
+
+      // Send my map
+      map.serializeMap(dataWriter);
+
+      // Send the food we know to be claimed
+      claims.write(dataWriter, this.timeStep);
+
+      // Send our role, and anything else the strategy shares
+      dataWriter.writeBoolean(this.isScout);
+      writeStrategy(dataWriter);
+
+      if(AntMetrics.ENABLED) AntMetrics.BYTES_SENT.add(outputBytes.size());
+      AntEvents.endMessage(event, this, false, outputBytes.size());
+      return outputBytes.toByteArray();
+    }catch(IOException e){
+      System.err.println("Unable to send data!!!");
+      return null;
+    }
+  }
+
+  /**
+   * Holds on to the data recieved from another ant. Everything that arrives
+   * before the ant next acts or sends is merged in one go by
+   * mergeMessages(), so an ant arriving in a crowd doesn't rebuild its state
+   * for every ant it meets.
+   * @param data The byte array constructed by the other ant's send().
+   */
+  @Override
+  public void receive(byte[] data){
+    if(data == null) return;
+    if(AntMetrics.ENABLED) AntMetrics.BYTES_RECEIVED.add(data.length);
+    if(data.length > 0) pending.add(data);
+  }
+
+  /**
+   * Merges every message recieved since the last action or send. The
+   * timesteps are brought in line once, to the newest of all of them, and
+   * then each map is merged straight out of its message, so every cell ends
+   * up with the newest information any of the ants had.
+   */
+  private void mergeMessages(){
+    if(pending.isEmpty()) return;
+    AntEvents.Message event = new AntEvents.Message();
+    event.begin();
+
+    // Make sure everyone's timesteps are aligned.
+    int newest = this.timeStep;
+    for(int i = 0; i < pending.size(); i++){
+      newest = Math.max(newest, ByteBuffer.wrap(pending.get(i)).getInt());
+    }
+    if(newest > this.timeStep){
+      map.adjustTimes(this.timeStep, newest);
+      claims.adjustTimes(this.timeStep, newest);
+      this.timeStep = newest;
+    }
+
+    int bytes = 0;
+    for(int i = 0; i < pending.size(); i++){
+      byte[] data = pending.get(i);
+      bytes += data.length;
+      try{
+        ByteBuffer message = ByteBuffer.wrap(data);
+        int otherTimeStep = message.getInt();
+
+        // Add the information from the other ant into the current map, in
+        // line with our timestep.
+        map.mergeSerialized(message, this.timeStep - otherTimeStep);
+
+        // And learn which food the other ants are heading for.
+        DataInputStream dataReader = 
+          new DataInputStream(new ByteArrayInputStream(data, message.position(),
+                                                       message.remaining()));
+        claims.read(dataReader, this.timeStep - otherTimeStep);
+
+        // And what the other ant is doing.
+        roles.observe(dataReader.readBoolean());
+        readStrategy(dataReader);
+      }catch(IOException | BufferUnderflowException e){
+        System.err.println("Unable to recieve data!!!");
+      }
+    }
+    pending.clear();
+
+    // Force a new plan (we assume that we will get new information from
+    // the merge)
+    if(AntMetrics.ENABLED && plan != null && !plan.isEmpty()){
+      AntMetrics.PLANS_DISCARDED.increment();
+    }
+    this.plan = null;
+    AntEvents.endMessage(event, this, true, bytes);
+  }
+
+  /**
+   * This adds the newly seen surrounding information to the map. In this way,
+   * we make sure that the ant always has the most recent information about a
+   * given square. 
+   * @param s The surroundings passed to {@link #getAction(ants.Surroundings)} 
+   */
+  private void updateSurroundings(Surroundings s){
+    // The ant doesn't count itself, or its own trail would look crowded.
+    Tile here = s.getCurrentTile();
+    map.updateMap(x, y, !here.isTravelable(), here.getAmountOfFood(),
+                  Math.max(0, here.getNumAnts() - 1), timeStep);
+    map.updateMap(x, y-1, s.getTile(Direction.NORTH), timeStep);
+    map.updateMap(x+1, y, s.getTile(Direction.EAST), timeStep);
+    map.updateMap(x, y+1, s.getTile(Direction.SOUTH), timeStep);
+    map.updateMap(x-1, y, s.getTile(Direction.WEST), timeStep);
+  }
+  
+  ///////////////////////////////////////////////////////////
+  //                                                       // 
+  // This code is used to help the ant plan its next moves //
+  //                                                       //
+  ///////////////////////////////////////////////////////////
+
+  /**
+   * This is one of the two major searching functions. This one searches for the
+   * closest food worth gathering that other ants haven't already claimed, and
+   * claims it.
+   * @return The steps to get to the closest food
+   */
+  ArrayDeque<Action> findFoodPlan(){
+    ArrayDeque<Action> moves = cachedRoute(new SearchGoal(){
+      @Override
+      public boolean isGoal(int x, int y){
+        int food = map.getFood(x, y);
+        return food > 0 && isFoodGoal(x, y) &&
+               food > claims.claimedAt(x, y, timeStep, id);
+      }
+
+      @Override
+      public String planName(){
+        return "Find Food";
+      }
+    }, foodPlanner == null ? routePlanner() : foodPlanner);
+    if(moves == null){
+      claims.release(id, ++claimVersion, timeStep);
+    }else{
+      claimTarget(moves);
+    }
+    return moves;
+  }
+
+  /**
+   * Claims one piece of food at the end of a plan.
+   * @param moves The plan that leads to the food
+   */
+  private void claimTarget(ArrayDeque<Action> moves){
+    int target = endOf(moves);
+    claims.put(id, ++claimVersion, Position.unpackX(target),
+               Position.unpackY(target), timeStep + moves.size(), 1);
+  }
+
+  /**
+   * Works out where a plan leads.
+   * @param moves The plan, starting from where the ant is now
+   * @return The packed position (see Position.pack()) the ant will be at
+   * after following the plan
+   */
+  protected int endOf(ArrayDeque<Action> moves){
+    int tx = x, ty = y;
+    for(Action a : moves){
+      switch(a.getDirection()){
+        case NORTH:
+          ty -= 1;
+          break;
+        case EAST:
+          tx += 1;
+          break;
+        case SOUTH:
+          ty += 1;
+          break;
+        case WEST:
+          tx -= 1;
+      }
+    }
+    return Position.pack(tx, ty);
+  }
+
+  /**
+   * This is one of the two major searching functions. This one searches for
+   * somewhere to deliver food to.
+   * @return The steps to get to the closest delivery goal
+   */
+  ArrayDeque<Action> deliverFoodPlan(){
+    if(speculator != null){
+      ArrayDeque<Action> moves = speculator.take(map, x, y, deliveryGoal);
+      if(moves != null) return moves;
+    }
+    return cachedRoute(new SearchGoal(){
+      @Override
+      public boolean isGoal(int x, int y){
+        return isDeliveryGoal(x, y);
+      }
+
+      @Override
+      public int estimate(int x, int y){
+        return deliveryEstimate(x, y);
+      }
+
+      @Override
+      public String planName(){
+        return "Deliver Food";
+      }
+    }, routePlanner());
+  }
+
+  /**
+   * This plan is the fallback plan if the ant is unable to find food. It
+   * searches for an area that has not been explored before. 
+   * @return The steps to get to an unexplored square.
+   */
+  ArrayDeque<Action> intoTheUnknownPlan(){
+    return searchForGoal(new SearchGoal(){
+      @Override
+      public boolean isGoal(int x, int y){
+        // If we are next to an unknown position, then we have reached our goal.
+        return map.nextToUnknown(x, y);
+      }
+
+      @Override
+      public String planName(){
+        return "the unknown";
+      }
+    }, planner);
+  }
+
+  /**
+   * This is the generic function that drives the searching algorithm. We pass
+   * in a SearchGoal, which is either looking for food, the anthill or the
+   * unknown, and let the planner search the map for it.
+   * @param g The goal test class. 
+   * @param planner The search algorithm to use
+   * @return the result of the search, or null if no goal is reachable.
+   */
+  private ArrayDeque<Action> searchForGoal(SearchGoal g, Planner planner){
+    AntEvents.PlanSearch event = new AntEvents.PlanSearch();
+    event.begin();
+
+    ArrayDeque<Action> moves = planner.plan(map, x, y, hasFood, g, rand);
+    int expanded = planner.getNodesExpanded();
+
+    if(AntMetrics.ENABLED){
+      AntMetrics.nodesExpanded(g.planName()).add(expanded);
+      if(moves == null) AntMetrics.PLANS_FAILED.increment();
+    }
+    AntEvents.endPlanSearch(event, this, g.planName(), expanded,
+                            moves == null ? -1 : moves.size());
+    return moves;
+  }
+
+  /**
+   * Looks up a trip to food or back in the route cache, and plans it if it
+   * isn't there.
+   * @param g The goal test class
+   * @param planner The search algorithm to use on a miss
+   * @return the route, or null if no goal is reachable.
+   */
+  private ArrayDeque<Action> cachedRoute(SearchGoal g, Planner planner){
+    if(routes == null) return searchForGoal(g, planner);
+
+    ArrayDeque<Action> moves = routes.get(x, y, g);
+    if(moves != null){
+      if(AntMetrics.ENABLED) AntMetrics.ROUTE_CACHE_HITS.increment();
+      return moves;
+    }
+    if(AntMetrics.ENABLED) AntMetrics.ROUTE_CACHE_MISSES.increment();
+
+    moves = searchForGoal(g, planner);
+    if(moves != null && !moves.isEmpty()) routes.put(x, y, g, moves);
+    return moves;
+  }
+
+  /**
+   * Returns the planner used for trips to food and back.
+   */
+  private Planner routePlanner(){
+    return routePlanner == null ? planner : routePlanner;
+  }
+
+  /**
+   * This helper function helps keep track of hasFood, x, and y. When we call
+   * makeMove, we return the same action, but we update the variables
+   * accordingly.
+   * @param a The action we are taking
+   * @return the action we passed in
+   */
+  private Action makeMove(Action a){
+    if(a == Action.HALT){
+      return a;
+    }else if(a == Action.GATHER){
+      this.hasFood = true;
+      return a;
+    }else if(a == Action.DROP_OFF){
+      this.hasFood = false;
+      return a;
+    }else{
+      switch(a.getDirection()){
+        case NORTH:
+          y -= 1;
+          break;
+        case EAST:
+          x += 1;
+          break;
+        case SOUTH:
+          y += 1;
+          break;
+        case WEST:
+          x -= 1;
+      }
+      return a;
+    }
+  }
+}
@@ -1,7 +1,15 @@
 /**
- * This class stores an x and y coordinate.
+ * This class stores an x and y coordinate. The static methods work on the
+ * same coordinates packed into a single int, for loops that shouldn't make a
+ * new Position at every step.
  */
 public class Position{
+  /**
+   * The largest distance from the anthill, in either direction, that a packed
+   * position can hold.
+   */
+  static final int MAX_PACKED = Short.MAX_VALUE;
+
   /**
    * The x coordinate.
    */
@@ -67,10 +75,56 @@ public class Position{
   }
 
   /**
-   * Hashes the Position. Used to put these positions into a hashtable.
+   * Hashes the Position. Used to put these positions into a hashtable. The
+   * packed coordinates are scrambled so that neighbouring positions are spread
+   * over the whole table.
    */
   public int hashCode(){
-    return (x*17) ^ y;
+    int h = pack(x, y) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Packs this position into an int.
+   * @return The packed coordinates
+   */
+  public int pack(){
+    return pack(x, y);
+  }
+
+  /**
+   * Packs a pair of coordinates into an int, x in the upper half and y in the
+   * lower half. Both must be within MAX_PACKED of the anthill, since anything
+   * further would wrap around to a different position.
+   * @param x The x coordinate
+   * @param y The y coordinate
+   * @return The packed coordinates
+   * @throws IllegalArgumentException If a coordinate is out of range
+   */
+  static int pack(int x, int y){
+    if(Math.abs(x) > MAX_PACKED || Math.abs(y) > MAX_PACKED){
+      throw new IllegalArgumentException("(" + x + ", " + y + 
+                                         ") is too far away to pack");
+    }
+    return (x << 16) | (y & 0xFFFF);
+  }
+
+  /**
+   * Gets the x coordinate out of a packed position.
+   * @param packed The packed coordinates
+   * @return The x coordinate
+   */
+  static int unpackX(int packed){
+    return packed >> 16;
+  }
+
+  /**
+   * Gets the y coordinate out of a packed position.
+   * @param packed The packed coordinates
+   * @return The y coordinate
+   */
+  static int unpackY(int packed){
+    return (short)packed;
   }
 
   /**
@@ -79,4 +133,12 @@ public class Position{
   public int manhattanDistance(Position other){
     return Math.abs(this.x - other.x) + Math.abs(this.y - other.y);
   }
+
+  /**
+   * Returns the manhattan distance between two packed positions.
+   */
+  static int manhattanDistance(int a, int b){
+    return Math.abs(unpackX(a) - unpackX(b)) +
+           Math.abs(unpackY(a) - unpackY(b));
+  }
 }
@@ -1,496 +1,263 @@
 import ants.*;
-import java.lang.Math;
 import java.util.ArrayDeque;
-import java.util.Stack;
-import java.util.Hashtable;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collections;
 
 /**
- * This is an ant that maps the world around it to get a good idea where to
- * travel next. 
+ * This is a mapping ant that ignores food close to the anthill, and drops off
+ * the food it gathers as soon as it is back within a radius of the anthill.
+ * The radius shrinks over time, so food is passed inwards by a bucket brigade
+ * of ants until it reaches the anthill. How fast it shrinks is driven by how
+ * far each ant is carrying food: short legs mean the food has piled up just
+ * inside the radius, so the radius is pulled in far enough for the next legs
+ * to be worth walking. The ants share their estimates whenever they meet, so
+ * the colony settles on one radius.
  */
-public class RadiusAnt implements Ant{
+public class RadiusAnt extends PlanningAnt{
   /**
-   * If the ant has food, then it can no longer collect food
+   * The radius every ant starts out with.
    */
-  private boolean hasFood = false;
+  private static final int START_RADIUS = 40;
 
   /**
-   * The scout ant searches into the unknown.
+   * The number of actions before the radius first changes.
    */
-  private boolean isScout = false;
+  private static final int FIRST_DECISION = 30;
 
   /**
-   * This is the current timestep, as far as this ant is concerned.
+   * The number of actions between changes to the radius.
    */
-  private int timeStep = 0;
+  private static final int EVALUATE_EVERY = 10;
 
   /**
-   * This is the number of actions that the given ant has taken. Similar to
-   * timestep, but does not get modified when we talk to other ants.
+   * The number of moves we would like each leg of the brigade to carry food.
    */
-  private int actionsTaken = 0;
+  private static final int TARGET_HOPS = 8;
 
   /**
-   * The x distance from the anthill
+   * How far the radius shrinks when no food got through it.
    */
-  private int x = 0;
+  private static final int IDLE_STEP = TARGET_HOPS / 2;
 
   /**
-   * The y distance from the anthill
+   * How much each new observation moves the running average.
    */
-  private int y = 0;
+  private static final double ALPHA = 0.2;
 
   /**
-   * This class will keep track of the world around the ants. 
-   * When two ants pass each other, they will share information and update each
-   * others' maps.
+   * Food within this many moves of the anthill is left where it is.
    */
-  private WorldMap map = new WorldMap(5);
+  private int radius = START_RADIUS;
 
   /**
-   * Each ant keeps track of a plan of movements for what it is currently trying
-   * to achieve. The path is found using a breadth first search of the ant's
-   * map.
+   * The radius before it is rounded down. Meeting ants average this, so
+   * they agree on the radius without every meeting pulling it in.
    */
-  private ArrayDeque<Action> plan;
-
-  private Position anthill = new Position(0,0);
+  private double exactRadius = START_RADIUS;
 
-  private int radius = 40;
   /**
-   * This is the subroutine to get the action for the ant to take. It returns an
-   * action based on its current plan. This operation is very quick unless the
-   * ant is forming a new plan. 
-   * @param surroundings the squares that the ant can see.
-   * @return The selected action.
+   * The running average of the moves food was carried per pick up.
    */
-  @Override
-  public Action getAction(Surroundings surroundings){
-    // This will keep the surroundings updated with the new values gained from
-    // surroundings. We want to make sure that we have the most up to date
-    // information in the map. 
-    updateSurroundings(surroundings);
-
-    this.timeStep++;
-    this.actionsTaken++;
-
-    if(this.actionsTaken > 30){
-      if(this.radius > 0 && this.actionsTaken % 10 == 0){
-        this.radius -= 1;
-      }
-    }
-    if(this.isScout){
-      // After 20 turns, scouts turn back into gatherers
-      if(this.actionsTaken == 20){
-        plan = findFoodPlan();
-        this.isScout = false;
-      }
+  private double hopsPerFood = TARGET_HOPS;
 
-      // If our current plan is empty, make a new one.
-      if(plan == null || plan.isEmpty())
-        plan = intoTheUnknownPlan();
-
-      if(plan == null){
-        this.isScout = false;
-        plan = deliverFoodPlan();
-      }
-      return this.makeMove(plan.pop());
-    }else{
-      Position here = new Position(x, y);
-
-      // If we are on a food square, pick it up and start to travel back home.
-      if(!hasFood && map.getFood(x, y) > 0 && anthill.manhattanDistance(here) > radius){
-        plan = deliverFoodPlan();
-        return this.makeMove(Action.GATHER);
-      }
-
-      // If we are at the anthill, drop off our food and look for more food.
-      if(hasFood && anthill.manhattanDistance(here) <= radius){
-        plan = findFoodPlan();
-        return this.makeMove(Action.DROP_OFF);
-      }
-
-      // If we don't currently have a plan, construct one.
-      if(plan == null || plan.isEmpty()){
-        if(!hasFood){
-          plan = findFoodPlan();
-        }else{
-          plan = deliverFoodPlan();
-        }
-      }
+  /**
+   * The food dropped off since the radius was last changed.
+   */
+  private int dropsThisWindow = 0;
 
-      // If we can't find what we want, just investigate unknown areas.
-      if(plan == null || plan.isEmpty()){ 
-        plan = intoTheUnknownPlan();
-      }
+  /**
+   * The action on which the food being carried was picked up.
+   */
+  private int gatheredOn = 0;
 
-      while(plan == null){
-        if(!hasFood){
-          plan = findFoodPlan();
-        }else{
-          plan = deliverFoodPlan();
-        }
-        radius--;
-      }
+  /**
+   * Where food is staged on its way in. Agreed on with the ants we meet.
+   */
+  private RelayDepots depots = new RelayDepots();
 
+  /**
+   * True while food is being dropped off at the depots, rather than anywhere
+   * inside the radius.
+   */
+  private boolean useDepots = false;
 
-      // Start performing the next action. 
-      Action nextMove = plan.pop();
-      
-      // Ensure that we can indeed make this move. 
-      if(map.validMove(nextMove, x, y, hasFood)){
-        return this.makeMove(nextMove);
-      }else{
-        // This would mean that a plan sent us into a wall, which should never
-        // happen.
-        System.out.println("Plan attempted an invalid move. (" + x + ", " + y +
-                           ") " + nextMove.getDirection());
-        System.out.println(map);
-        System.out.println();
-        System.exit(0);
-      }
-      return null;
-    }
+  /**
+   * Default constructor. The ant starts on the anthill knowing nothing about
+   * the world.
+   */
+  public RadiusAnt(){
+    super(new DistanceFieldPlanner());
   }
 
   /**
-   * Sends data about the current ant, his timestep, and his map.
-   * @return A byte array of the data we are sending.
+   * After 30 actions, the radius is reconsidered every 10 actions. If no food
+   * got through it shrinks by IDLE_STEP, otherwise it shrinks by however much
+   * the legs fell short of TARGET_HOPS.
    */
   @Override
-  public byte[] send(){
-    try{
-      ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
-      DataOutputStream dataWriter = new DataOutputStream(outputBytes);
-      
-      // Send the timestamp
-      dataWriter.writeInt(this.timeStep);
-
-      // Send my map
-      map.serializeMap(dataWriter);
+  protected void updateRole(){
+    // Pick new depots once the radius moves past the old ones. If there was
+    // no food to pick them from, look again every so often.
+    if(!useDepots && (depots.getRadius() != radius ||
+                      this.actionsTaken % EVALUATE_EVERY == 0)){
+      depots.pick(map, radius);
+      updateDepots();
+    }
 
-      return outputBytes.toByteArray();
-    }catch(IOException e){
-      System.err.println("Unable to send data!!!");
-      return null;
+    if(this.actionsTaken <= FIRST_DECISION || 
+       this.actionsTaken % EVALUATE_EVERY != 0){
+      return;
     }
+    int step;
+    if(dropsThisWindow == 0){
+      step = IDLE_STEP;
+    }else{
+      step = Math.max(0, TARGET_HOPS - (int)Math.round(hopsPerFood));
+    }
+    dropsThisWindow = 0;
+    setRadius(Math.max(0, exactRadius - step));
   }
 
   /**
-   * Reads the data recieved from another ant, and updates his information
-   * accordingly. 
-   * @param data The byte array constructed by the other ant's send().
+   * Remembers when the food was picked up.
    */
   @Override
-  public void receive(byte[] data){
-    try{
-      ByteArrayInputStream inputBytes = new ByteArrayInputStream(data);
-      DataInputStream dataReader = new DataInputStream(inputBytes);
-
-      int otherTimeStep = dataReader.readInt();
-      
-      // Make sure everyone's timesteps are aligned. 
-      if(otherTimeStep > this.timeStep){
-        map.adjustTimes(this.timeStep, otherTimeStep);
-        this.timeStep = otherTimeStep;
-      }
-
-      // Load the other ant's map. 
-      WorldMap otherMap = new WorldMap();
-      otherMap.deserializeMap(dataReader);
-
-      // Make it match your timestep.
-      otherMap.adjustTimes(otherTimeStep, this.timeStep);
-      
-      // Add the information from the other ant into the current map. 
-      map.mergeInto(otherMap);
-
-      // Force a new plan (we assume that we will get new information from
-      // mergeInto()
-      this.plan = null;
-    }catch(IOException e){
-      System.err.println("Unable to recieve data!!!");
-    }
+  protected void foodGathered(){
+    gatheredOn = actionsTaken;
   }
 
   /**
-   * This adds the newly seen surrounding information to the map. In this way,
-   * we make sure that the ant always has the most recent information about a
-   * given square. 
-   * @param s The surroundings passed to {@link #getAction(ants.Surroundings)} 
+   * Records how far the food was carried.
    */
-  private void updateSurroundings(Surroundings s){
-    map.updateMap(x, y,   s.getCurrentTile(), timeStep);
-    map.updateMap(x, y-1, s.getTile(Direction.NORTH), timeStep);
-    map.updateMap(x+1, y, s.getTile(Direction.EAST), timeStep);
-    map.updateMap(x, y+1, s.getTile(Direction.SOUTH), timeStep);
-    map.updateMap(x-1, y, s.getTile(Direction.WEST), timeStep);
+  @Override
+  protected void foodDroppedOff(){
+    dropsThisWindow++;
+    hopsPerFood += ALPHA * ((actionsTaken - gatheredOn) - hopsPerFood);
   }
-  
-  ///////////////////////////////////////////////////////////
-  //                                                       // 
-  // This code is used to help the ant plan its next moves //
-  //                                                       //
-  ///////////////////////////////////////////////////////////
-  
+
   /**
-   * This is used to define the three different search goals. It makes it so we
-   * can define a single search function
+   * Shares our radius and how far we have been carrying food.
    */
-  private interface SearchGoal{
-    /**
-     * This is the goal test.
-     * @param p The current position of the ant.
-     * @return true if the current position is at a goal state.
-     */
-    public boolean isGoal(Position p);
-
-    /**
-     * This simply returns an identifying string. Used to determine which
-     * SearchGoal we are using
-     */
-    public String planName();
+  @Override
+  protected void writeStrategy(DataOutputStream dataWriter) throws IOException{
+    dataWriter.writeDouble(exactRadius);
+    dataWriter.writeDouble(hopsPerFood);
+    depots.write(dataWriter);
   }
 
   /**
-   * This class keeps track of the moves that were taken by the ant to get to
-   * this point, and the position of the ant. This is very useful for planning
-   * purposes, and is what we keep in the Queue.
+   * Meets the other ant halfway on every estimate.
    */
-  private class PartialPlan{
-    /**
-     * This is the current position of the ant. 
-     */
-    public Position p;
-
-    /**
-     * This is the list of actions taken to get to this point. 
-     */
-    public ArrayDeque<Action> moves;
-
-    /**
-     * Primary constructor, we start of with no movements and add the actions in
-     * later. 
-     * @param p The starting position of the ant
-     */
-    PartialPlan(Position p){
-      this.p = p;
-      moves = new ArrayDeque<Action>();
-    }
-
-    /**
-     * Gets the current X position of the ant. 
-     */
-    public int getX(){
-      return p.getX();
-    }
-
-    /**
-     * Gets the current Y position of the ant.
-     */
-    public int getY(){
-      return p.getY();
-    }
-
-    /**
-     * This is how we add new movements to the partial plan. When we call this
-     * method, we get a new PartialPlan that contains the newly added Move. The
-     * Move contains both the new position and the action that was taken to get
-     * there. In this way, we can keep adding to the moves Queue.
-     * @param m The new move that is being added to the plan.
-     * @return A new PartialPlan with the new Move added in. 
-     */
-    public PartialPlan planWithMove(Move m){
-      PartialPlan retval = new PartialPlan(new Position(m.getPosition()));
-      retval.moves = new ArrayDeque<Action>(this.moves);
-      retval.moves.add(m.getAction());
-      return retval;
-    }
-
-    /**
-     * Returns the position object.
-     */
-		public Position getPosition(){
-			return p;
-		}
-
-    /**
-     * Converts to a string.
-     */
-    public String toString(){
-      return "Partial Plan: " + p + " " +  moves;
-    }
+  @Override
+  protected void readStrategy(DataInputStream dataReader) throws IOException{
+    double otherRadius = dataReader.readDouble();
+    hopsPerFood = (hopsPerFood + dataReader.readDouble()) / 2;
+    setRadius((exactRadius + otherRadius) / 2);
+    RelayDepots otherDepots = new RelayDepots();
+    otherDepots.read(dataReader);
+    depots.adopt(otherDepots, map, radius);
+    updateDepots();
   }
 
   /**
-   * This is one of the two major searching functions. This one searches for the
-   * closest food spot.
-   * @return The steps to get to the closest food
+   * Only food outside of the radius is worth gathering.
    */
-  private ArrayDeque<Action> findFoodPlan(){
-    return searchForGoal(new SearchGoal(){
-      @Override
-      public boolean isGoal(Position p){
-        // We have reached the goal when we have a position with food that is
-        // not the anthill.
-        return (map.getFood(p.getX(), p.getY()) > 0 && 
-                           anthill.manhattanDistance(p) > radius);
-      }
-
-      @Override
-      public String planName(){
-        return "Find Food";
-      }
-    });
+  @Override
+  protected boolean isFoodGoal(int x, int y){
+    return Math.abs(x) + Math.abs(y) > radius;
   }
 
   /**
-   * This is one of the two major searching functions. This one searches for the
-   * anthill.
-   * @return The steps to get to the anthill
+   * Food is carried back to a depot, or if there are none, inside the radius
+   * close to one of the axes.
    */
-  private ArrayDeque<Action> deliverFoodPlan(){
-    return searchForGoal(new SearchGoal(){
-      @Override
-      public boolean isGoal(Position p){
-        return (anthill.manhattanDistance(p) <= radius && 
-                (Math.abs(p.getX()) < 5 ||
-                Math.abs(p.getY()) < 5)
-                );
-      }
-
-      @Override
-      public String planName(){
-        return "Deliver Food";
-      }
-    });
+  @Override
+  protected boolean isDeliveryGoal(int x, int y){
+    if(useDepots) return depots.isDepot(x, y);
+    return Math.abs(x) + Math.abs(y) <= radius && 
+           (Math.abs(x) < 5 || Math.abs(y) < 5);
   }
 
   /**
-   * This plan is the fallback plan if the ant is unable to find food. It
-   * searches for an area that has not been explored before. 
-   * @return The steps to get to an unexplored square.
+   * Food may be dropped off at a depot, or if there are none, anywhere inside
+   * the radius.
    */
-  private ArrayDeque<Action> intoTheUnknownPlan(){
-    return searchForGoal(new SearchGoal(){
-      @Override
-      public boolean isGoal(Position p){
-        // If we are next to an unknown position, then we have reached our goal.
-        return map.nextToUnknown(p.getX(), p.getY());
-      }
-
-      @Override
-      public String planName(){
-        return "the unknown";
-      }
-    });
+  @Override
+  protected boolean canDropOff(int x, int y){
+    if(useDepots) return depots.isDepot(x, y);
+    return Math.abs(x) + Math.abs(y) <= radius;
   }
 
   /**
-   * This is the generic function that drives the searching algorithm. We pass
-   * in a SearchGoal, which is either looking for food, or for the anthill, and
-   * we perform a breadth first search on the map until we find what we are
-   * looking for or have exhausted all options. 
-   * @param g The goal test class. 
-   * @return the result of the search.
+   * The number of moves needed to get back inside the radius.
    */
-  private ArrayDeque<Action> searchForGoal(SearchGoal g){
-    // We keep track of potential paths in a queue.
-    ArrayDeque<PartialPlan> fringe = new ArrayDeque<PartialPlan>();
-
-    // We don't want to re-expand a given node, so we put it into the closed
-    // set.
-    Hashtable<Position, Boolean> closedSet = new Hashtable<Position, Boolean>();
-
-    // We start off with a PartialPlan at the current position of the ant.
-    PartialPlan start = new PartialPlan(new Position(this.x, this.y));
-    boolean debug = false;
-    if(debug)
-      System.out.println(map);
-
-    // We add our starting plan to the fringe.
-    fringe.push(start);
-
-    // If the fringe is ever empty, then we have exhausted all possibilites.
-    while(!fringe.isEmpty()){
-      // The current partial plan we are considering.
-      PartialPlan consider = fringe.remove();
+  @Override
+  protected int deliveryEstimate(int x, int y){
+    return Math.max(0, Math.abs(x) + Math.abs(y) - radius);
+  }
 
-      // The map tells us the possible moves. (We wont plan to move into unknown
-      // areas.
-      Move[] successors = map.getPossibleMoves(consider.getX(), 
-                                               consider.getY(),
-                                               hasFood);
-      Collections.shuffle(Arrays.asList(successors));
-      // We make sure that the current position hasn't been considered yet, and
-      // if it has, we continue to the next one.
-      if(closedSet.put(consider.getPosition(), true) == null){
-        // If we are at the goal, then we are done.
-        if(g.isGoal(consider.getPosition())){
-          return consider.moves;
-        }
-        // Add all of the successor states to the fringe.
-        for(Move successor : successors){
-          PartialPlan newPlan = consider.planWithMove(successor);
-          fringe.add(newPlan);
-        }
+  /**
+   * Investigates the unknown, and if there is nothing left to explore finds
+   * the radius that gives the ant something to do with a single search. An
+   * ant looking for food goes after the closest food anywhere, and pulls the
+   * radius in to just inside it. An ant carrying food heads for the closest
+   * place it could deliver to, and pushes the radius out to reach it.
+   */
+  @Override
+  protected ArrayDeque<Action> recoverPlan(){
+    ArrayDeque<Action> p = intoTheUnknownPlan();
+    if(p != null) return p;
+
+    int oldRadius = radius;
+    if(!hasFood){
+      radius = 0;
+      p = findFoodPlan();
+      if(p != null){
+        int food = endOf(p);
+        oldRadius = Math.min(oldRadius, 
+                             Position.manhattanDistance(food, 0) - 1);
       }
-    }
-
-    // The only plan that can't return null is the unknown search.
-    if(g.planName().equals("the unknown") && false){
-      // The fringe is exhausted, so we choose a random direction from our list 
-      // of possible directions.
-      System.out.println("No path to " + g.planName() + 
-                         " found. Using fallback");
-      ArrayDeque<Action> backup = new ArrayDeque<Action>();
-      Move[] p = map.getPossibleMoves(x, y, hasFood);
-      int index = (int)(Math.random() * p.length);
-      backup.add(p[index].getAction());
-      return backup;
     }else{
-      return null;
+      // The depots can't be reached, so fall back on the radius.
+      useDepots = false;
+      radius = Integer.MAX_VALUE;
+      p = deliverFoodPlan();
+      if(p != null){
+        int drop = endOf(p);
+        oldRadius = Math.max(oldRadius, Position.manhattanDistance(drop, 0));
+      }
     }
+    radius = oldRadius;
+    if(radius != (int)exactRadius) exactRadius = radius;
+    map.invalidateFlowField(DELIVERY_FIELD);
+    return p;
   }
 
   /**
-   * This helper function helps keep track of hasFood, x, and y. When we call
-   * makeMove, we return the same action, but we update the variables
-   * accordingly.
-   * @param a The action we are taking
-   * @return the action we passed in
+   * Changes the radius.
+   * @param exactRadius The new radius, before rounding down
    */
-  private Action makeMove(Action a){
-    if(a == Action.HALT){
-      return a;
-    }else if(a == Action.GATHER){
-      this.hasFood = true;
-      return a;
-    }else if(a == Action.DROP_OFF){
-      this.hasFood = false;
-      return a;
-    }else{
-      switch(a.getDirection()){
-        case NORTH:
-          y -= 1;
-          break;
-        case EAST:
-          x += 1;
-          break;
-        case SOUTH:
-          y += 1;
-          break;
-        case WEST:
-          x -= 1;
-      }
-      return a;
+  private void setRadius(double exactRadius){
+    this.exactRadius = exactRadius;
+    int radius = (int)exactRadius;
+    if(radius != this.radius){
+      this.radius = radius;
+      updateDepots();
+      map.invalidateFlowField(DELIVERY_FIELD);
+      stopWaiting();
     }
   }
+
+  /**
+   * Decides wether food is dropped off at the depots, after they or the
+   * radius changed. If the ant was or is heading for the depots, where it is
+   * heading may have changed, so it stops waiting.
+   */
+  private void updateDepots(){
+    boolean usedDepots = useDepots;
+    useDepots = depots.isValidFor(map, radius);
+    map.invalidateFlowField(DELIVERY_FIELD);
+    if(useDepots || usedDepots) stopWaiting();
+  }
 }
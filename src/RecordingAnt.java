@@ -0,0 +1,209 @@
+import ants.*;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wraps another ant and writes everything it is given to a log: the
+ * surroundings passed to getAction, the messages passed to receive, and the
+ * seed it was given. AntReplayer can feed the log back into a fresh ant, which
+ * gives exactly the same workload every time for profiling.
+ *
+ * The log starts with MAGIC, VERSION and the name of the ant's class. After
+ * that every entry is a one byte tag followed by its data:
+ * <ul>
+ * <li>SEED: the seed as a long
+ * <li>ACTION: five tiles (current, north, east, south, west), each as the
+ * food int, the ants int and a travelable byte, then the action the ant chose
+ * <li>SEND: the length of the message the ant sent
+ * <li>RECEIVE: the length of the message, then the message itself, or -1
+ * and nothing else if the message was null
+ * </ul>
+ */
+public class RecordingAnt implements Ant, Seedable{
+  /**
+   * The first int of every log.
+   */
+  public static final int MAGIC = 0x414e544c;
+
+  /**
+   * The version of the log format.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Tag of an entry holding the ant's seed.
+   */
+  public static final byte SEED = 'E';
+
+  /**
+   * Tag of an entry holding a getAction call.
+   */
+  public static final byte ACTION = 'A';
+
+  /**
+   * Tag of an entry holding a send call.
+   */
+  public static final byte SEND = 'S';
+
+  /**
+   * Tag of an entry holding a receive call.
+   */
+  public static final byte RECEIVE = 'R';
+
+  /**
+   * The order the tiles of the surroundings are written in.
+   */
+  static final Direction[] DIRECTIONS = {Direction.NORTH, Direction.EAST, 
+                                         Direction.SOUTH, Direction.WEST};
+
+  /**
+   * The ant being recorded.
+   */
+  private Ant ant;
+
+  /**
+   * The log file.
+   */
+  private FileChannel channel;
+
+  /**
+   * Entries are gathered here and written to the channel when it fills up.
+   */
+  private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+  /**
+   * Starts recording an ant.
+   * @param ant The ant to record
+   * @param log The file to write the log to
+   */
+  RecordingAnt(Ant ant, File log) throws IOException{
+    this.ant = ant;
+    this.channel = new FileOutputStream(log).getChannel();
+    byte[] name = ant.getClass().getName().getBytes(StandardCharsets.UTF_8);
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putShort((short)name.length);
+    buffer.put(name);
+  }
+
+  /**
+   * Returns the ant being recorded.
+   */
+  public Ant getAnt(){
+    return ant;
+  }
+
+  @Override
+  public void setSeed(long seed){
+    ensureRoom(9);
+    buffer.put(SEED);
+    buffer.putLong(seed);
+    if(ant instanceof Seedable){
+      ((Seedable)ant).setSeed(seed);
+    }
+  }
+
+  @Override
+  public Action getAction(Surroundings surroundings){
+    ensureRoom(1 + 5 * 9 + 1);
+    buffer.put(ACTION);
+    putTile(surroundings.getCurrentTile());
+    for(Direction d : DIRECTIONS){
+      putTile(surroundings.getTile(d));
+    }
+    Action a = ant.getAction(surroundings);
+    buffer.put(encode(a));
+    return a;
+  }
+
+  @Override
+  public byte[] send(){
+    byte[] data = ant.send();
+    ensureRoom(5);
+    buffer.put(SEND);
+    buffer.putInt(data == null ? -1 : data.length);
+    return data;
+  }
+
+  @Override
+  public void receive(byte[] data){
+    ensureRoom(5);
+    buffer.put(RECEIVE);
+    buffer.putInt(data == null ? -1 : data.length);
+    if(data == null){
+      // A missing message is logged as it is, for the ant to deal with.
+    }else if(data.length <= buffer.remaining()){
+      buffer.put(data);
+    }else{
+      // Big messages go straight to the channel.
+      flush();
+      write(ByteBuffer.wrap(data));
+    }
+    ant.receive(data);
+  }
+
+  /**
+   * Writes everything that is buffered and closes the log.
+   */
+  public void close() throws IOException{
+    flush();
+    channel.close();
+  }
+
+  /**
+   * Writes a tile to the buffer.
+   */
+  private void putTile(Tile t){
+    buffer.putInt(t.getAmountOfFood());
+    buffer.putInt(t.getNumAnts());
+    buffer.put((byte)(t.isTravelable() ? 1 : 0));
+  }
+
+  /**
+   * Makes sure the buffer has room for the given number of bytes, writing it
+   * out if it doesn't.
+   */
+  private void ensureRoom(int bytes){
+    if(buffer.remaining() < bytes) flush();
+  }
+
+  /**
+   * Writes the buffer to the channel.
+   */
+  private void flush(){
+    buffer.flip();
+    write(buffer);
+    buffer.clear();
+  }
+
+  /**
+   * Writes all of a buffer to the channel. The Ant interface doesn't let us
+   * throw, so a failed write is turned into a RuntimeException.
+   */
+  private void write(ByteBuffer data){
+    try{
+      while(data.hasRemaining()){
+        channel.write(data);
+      }
+    }catch(IOException e){
+      throw new RuntimeException("Unable to write the ant log", e);
+    }
+  }
+
+  /**
+   * Converts an action into the byte stored in the log.
+   * @param a The action
+   * @return The code of the action
+   */
+  static byte encode(Action a){
+    if(a == null) return -1;
+    if(a == Action.HALT) return 0;
+    if(a == Action.GATHER) return 1;
+    if(a == Action.DROP_OFF) return 2;
+    return (byte)(3 + a.getDirection().ordinal());
+  }
+}
@@ -0,0 +1,248 @@
+import ants.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The staging cells where a bucket brigade drops food off for the next ant to
+ * carry on. They are picked where the shortest routes from the known food to
+ * the anthill cross into the radius: the routes follow one flow field towards
+ * the anthill, so they merge, and the cells where the most food crosses are
+ * the chokepoints. Staging food there keeps it in a few big piles on the way
+ * home, instead of scattered wherever an ant happened to cross the radius.
+ */
+public class RelayDepots{
+  /**
+   * The most depots there are at once.
+   */
+  public static final int MAX_DEPOTS = 3;
+
+  /**
+   * The name of the flow field that leads to the anthill.
+   */
+  public static final String HILL_FIELD = "hill";
+
+  /**
+   * The destination of the flow field that leads to the anthill.
+   */
+  private static final SearchGoal HILL = new SearchGoal(){
+    @Override
+    public boolean isGoal(int x, int y){
+      return x == 0 && y == 0;
+    }
+
+    @Override
+    public String planName(){
+      return "Anthill";
+    }
+  };
+
+  /**
+   * The x distances of the depots from the anthill.
+   */
+  private int[] xs = new int[MAX_DEPOTS];
+
+  /**
+   * The y distances of the depots from the anthill.
+   */
+  private int[] ys = new int[MAX_DEPOTS];
+
+  /**
+   * The number of depots.
+   */
+  private int count = 0;
+
+  /**
+   * The radius the depots were picked for, or -1 if they never were.
+   */
+  private int radius = -1;
+
+  /**
+   * The food crossing into the radius at each cell, while picking depots.
+   */
+  private int[] crossings = new int[0];
+
+  /**
+   * Returns wether a cell is a depot.
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   */
+  public boolean isDepot(int x, int y){
+    for(int i = 0; i < count; i++){
+      if(xs[i] == x && ys[i] == y) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns wether the depots can be used with a radius: there must be at
+   * least one, and all of them must be walkable and inside the radius.
+   * @param map The ant's map of the world
+   * @param radius The radius food is dropped off within
+   */
+  public boolean isValidFor(WorldMap map, int radius){
+    if(count == 0) return false;
+    for(int i = 0; i < count; i++){
+      if(!map.isPassable(xs[i], ys[i]) ||
+         Math.abs(xs[i]) + Math.abs(ys[i]) > radius){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the radius the depots were picked for, or -1 if they never were.
+   */
+  public int getRadius(){
+    return radius;
+  }
+
+  /**
+   * Returns the number of depots.
+   */
+  public int size(){
+    return count;
+  }
+
+  /**
+   * Picks the depots for a radius from the ant's map. Every known piece of
+   * food outside the radius follows the flow field towards the anthill, and
+   * the cells where the most food first comes inside the radius win.
+   * @param map The ant's map of the world
+   * @param radius The radius food is dropped off within
+   */
+  public void pick(WorldMap map, int radius){
+    this.radius = radius;
+    this.count = 0;
+    FlowField home = map.flowField(HILL_FIELD, HILL);
+    int width = map.getWidth();
+    int height = map.getHeight();
+    int minX = map.getMinX();
+    int minY = map.getMinY();
+    if(crossings.length < width * height){
+      crossings = new int[width * height];
+    }else{
+      Arrays.fill(crossings, 0, width * height, 0);
+    }
+
+    for(int y = minY; y < minY + height; y++){
+      for(int x = minX; x < minX + width; x++){
+        int food = map.getFood(x, y);
+        if(food == 0 || Math.abs(x) + Math.abs(y) <= radius) continue;
+
+        // Walk the food's shortest route home until it enters the radius.
+        int cx = x, cy = y;
+        while(Math.abs(cx) + Math.abs(cy) > radius){
+          Action step = home.step(map, cx, cy);
+          if(step == null) break;
+          int d = step.getDirection().ordinal();
+          cx += AStarPlanner.DX[d];
+          cy += AStarPlanner.DY[d];
+        }
+        if(Math.abs(cx) + Math.abs(cy) <= radius){
+          crossings[(cy - minY) * width + (cx - minX)] += food;
+        }
+      }
+    }
+
+    // Keep the busiest crossings.
+    for(int i = 0; i < width * height; i++){
+      if(crossings[i] == 0) continue;
+      int slot = count;
+      if(count == MAX_DEPOTS){
+        slot = weakest(width, minX, minY);
+        if(crossings[i] <= weight(slot, width, minX, minY)) continue;
+      }else{
+        count++;
+      }
+      xs[slot] = i % width + minX;
+      ys[slot] = i / width + minY;
+    }
+  }
+
+  /**
+   * Takes the other ant's depots if both ants should be using them, so the
+   * ants agree on where to stage food. Depots picked for a smaller radius
+   * win, since that ant is further along, and ties go to the set whose first
+   * depot comes first, so both ants make the same choice.
+   * @param other The other ant's depots
+   * @param map The ant's map of the world
+   * @param radius The radius food is dropped off within
+   * @return True if the other ant's depots were taken
+   */
+  public boolean adopt(RelayDepots other, WorldMap map, int radius){
+    if(!other.isValidFor(map, radius)) return false;
+    if(isValidFor(map, radius)){
+      if(other.radius > this.radius) return false;
+      if(other.radius == this.radius && !other.before(this)) return false;
+    }
+    this.count = other.count;
+    this.radius = other.radius;
+    System.arraycopy(other.xs, 0, xs, 0, other.count);
+    System.arraycopy(other.ys, 0, ys, 0, other.count);
+    return true;
+  }
+
+  /**
+   * Writes the depots.
+   * @param dataWriter The stream we are writing to
+   */
+  public void write(DataOutputStream dataWriter) throws IOException{
+    dataWriter.writeInt(radius);
+    dataWriter.writeInt(count);
+    for(int i = 0; i < count; i++){
+      dataWriter.writeInt(xs[i]);
+      dataWriter.writeInt(ys[i]);
+    }
+  }
+
+  /**
+   * Reads depots written by write(). Only the first MAX_DEPOTS are kept, but
+   * every depot in the message is read, so the stream stays in step. A
+   * negative count leaves no depots.
+   * @param dataReader The stream we are reading from
+   */
+  public void read(DataInputStream dataReader) throws IOException{
+    radius = dataReader.readInt();
+    int sent = dataReader.readInt();
+    count = Math.max(0, Math.min(sent, MAX_DEPOTS));
+    for(int i = 0; i < sent; i++){
+      int x = dataReader.readInt();
+      int y = dataReader.readInt();
+      if(i < count){
+        xs[i] = x;
+        ys[i] = y;
+      }
+    }
+  }
+
+  /**
+   * Returns wether this set's first depot comes before the other's.
+   */
+  private boolean before(RelayDepots other){
+    if(xs[0] != other.xs[0]) return xs[0] < other.xs[0];
+    return ys[0] < other.ys[0];
+  }
+
+  /**
+   * Returns the depot slot with the least food crossing.
+   */
+  private int weakest(int width, int minX, int minY){
+    int weakest = 0;
+    for(int i = 1; i < count; i++){
+      if(weight(i, width, minX, minY) < weight(weakest, width, minX, minY)){
+        weakest = i;
+      }
+    }
+    return weakest;
+  }
+
+  /**
+   * Returns the food crossing at a depot slot.
+   */
+  private int weight(int slot, int width, int minX, int minY){
+    return crossings[(ys[slot] - minY) * width + (xs[slot] - minX)];
+  }
+}
@@ -0,0 +1,132 @@
+import java.util.Random;
+
+/**
+ * Decides when an ant should scout the unknown and when it should gather.
+ * The colony wants more scouts when the food it knows about won't keep the
+ * gatherers busy for long, and none once there is nothing left to explore.
+ * Each ant estimates the share of scouts in the colony from the ants it
+ * meets, and switches roles with a probability that grows with the gap
+ * between that share and the share it wants, so the colony drifts towards it
+ * rather than every ant flipping at once.
+ */
+public class RoleScheduler{
+  /**
+   * The number of actions between role decisions.
+   */
+  public static final int EVALUATE_EVERY = 10;
+
+  /**
+   * The number of actions before the first role decision. A new ant knows
+   * too little about the world to judge it sooner, and the map it builds
+   * while scouting is shared with every ant it meets.
+   */
+  public static final int FIRST_DECISION = 20;
+
+  /**
+   * The largest share of the colony that should be scouting.
+   */
+  private static final double MAX_SCOUT_SHARE = 0.5;
+
+  /**
+   * The moves of gathering the known food should last for before the colony
+   * stops wanting scouts.
+   */
+  private static final int EXPLORE_HORIZON = 2000;
+
+  /**
+   * The gap between the wanted and the estimated share of scouts that is
+   * ignored, so roles don't flap.
+   */
+  private static final double MARGIN = 0.1;
+
+  /**
+   * How much each new observation moves the running averages.
+   */
+  private static final double ALPHA = 0.2;
+
+  /**
+   * The running average of wether the ants met were scouting.
+   */
+  private double scoutShare = 0;
+
+  /**
+   * The running average of the actions a round trip for food takes.
+   */
+  private double averageTrip = 40;
+
+  /**
+   * The action on which food was last dropped off.
+   */
+  private int lastDropOff = 0;
+
+  /**
+   * Records the role of an ant we met.
+   * @param otherIsScout True if the other ant was scouting
+   */
+  public void observe(boolean otherIsScout){
+    scoutShare += ALPHA * ((otherIsScout ? 1 : 0) - scoutShare);
+  }
+
+  /**
+   * Records food being dropped off.
+   * @param actionsTaken The number of actions the ant has taken
+   */
+  public void droppedOff(int actionsTaken){
+    if(lastDropOff > 0){
+      averageTrip += ALPHA * ((actionsTaken - lastDropOff) - averageTrip);
+    }
+    lastDropOff = actionsTaken;
+  }
+
+  /**
+   * Returns the share of the colony that should be scouting.
+   * @param knownFood The food on the ant's map that could be gathered
+   * @param frontier The number of known tiles next to unknown ones
+   */
+  public double wantedScoutShare(int knownFood, int frontier){
+    if(frontier == 0) return 0;
+    double work = knownFood * averageTrip;
+    if(work >= EXPLORE_HORIZON) return 0;
+    return MAX_SCOUT_SHARE * (1 - work / EXPLORE_HORIZON);
+  }
+
+  /**
+   * Decides the ant's role.
+   * @param isScout True if the ant is scouting now
+   * @param knownFood The food on the ant's map that could be gathered
+   * @param frontier The number of known tiles next to unknown ones
+   * @param rand Decides wether this ant is one of the ants that switch
+   * @return True if the ant should scout
+   */
+  public boolean shouldScout(boolean isScout, int knownFood, int frontier,
+                             Random rand){
+    if(frontier == 0) return false;
+    if(knownFood == 0) return true;
+    double wanted = wantedScoutShare(knownFood, frontier);
+    if(wanted == 0) return false;
+
+    // Just enough of the scouts leave, or gatherers join, to bring the share
+    // to what is wanted.
+    if(isScout && scoutShare > wanted + MARGIN){
+      return rand.nextDouble() >= (scoutShare - wanted) / scoutShare;
+    }
+    if(!isScout && scoutShare < wanted - MARGIN){
+      return rand.nextDouble() < (wanted - scoutShare) / (1 - scoutShare);
+    }
+    return isScout;
+  }
+
+  /**
+   * Returns the estimated share of scouts in the colony.
+   */
+  public double getScoutShare(){
+    return scoutShare;
+  }
+
+  /**
+   * Returns the running average of the actions a round trip takes.
+   */
+  public double getAverageTrip(){
+    return averageTrip;
+  }
+}
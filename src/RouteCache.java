@@ -0,0 +1,316 @@
+import ants.*;
+import java.util.ArrayDeque;
+
+/**
+ * Remembers the routes an ant has planned, so repeat trips (the anthill to a
+ * pile of food and back again) cost a lookup rather than a search. Routes are
+ * kept in a fixed number of slots, each holding where the route starts (see
+ * Position.pack()), the kind of goal it leads to and one byte per move. The
+ * least recently used route is dropped once every slot is taken. Every cell
+ * a route passes through, its start included, has an entry pointing back at
+ * the route in an open addressing table, so a route can be found from any
+ * cell along it, and when the map learns that one of those cells is a wall,
+ * the routes through it are dropped straight away. Looking a route up
+ * allocates nothing but the plan it returns.
+ */
+public class RouteCache implements WallListener{
+  /**
+   * The number of routes kept.
+   */
+  public static final int CAPACITY = 64;
+
+  /**
+   * Where each route starts, packed with Position.pack().
+   */
+  private final int[] starts = new int[CAPACITY];
+
+  /**
+   * The name of the goal each route leads to, from SearchGoal.planName(), or
+   * null if the slot is free.
+   */
+  private final String[] goals = new String[CAPACITY];
+
+  /**
+   * The moves of each route, as direction ordinals.
+   */
+  private final byte[][] moves = new byte[CAPACITY][];
+
+  /**
+   * The clock reading when each route was last used.
+   */
+  private final long[] lastUsed = new long[CAPACITY];
+
+  /**
+   * Ticks with every use of a route, to find the least recently used one.
+   */
+  private long clock = 0;
+
+  /**
+   * The number of routes held.
+   */
+  private int size = 0;
+
+  /**
+   * The cell of each entry in the table, packed with Position.pack().
+   */
+  private int[] cells = new int[256];
+
+  /**
+   * The slot of each entry's route plus one, or zero if the entry is empty.
+   */
+  private int[] routeOf = new int[256];
+
+  /**
+   * The number of moves along its route each entry's cell is.
+   */
+  private int[] steps = new int[256];
+
+  /**
+   * The number of entries in the table.
+   */
+  private int entries = 0;
+
+  /**
+   * Looks up a route, and checks that it still ends at a goal. Besides the
+   * routes that start here, any route to the same kind of goal that passes
+   * through here will do: an ant that replans partway along a trip, like
+   * after hearing from another ant, picks up where it left off.
+   * @param x The x distance of the start from the anthill
+   * @param y The y distance of the start from the anthill
+   * @param g The goal the route must lead to
+   * @return The moves of the route, or null if there is no usable route
+   */
+  public ArrayDeque<Action> get(int x, int y, SearchGoal g){
+    String goal = g.planName();
+    int cell = Position.pack(x, y);
+    while(true){
+      int entry = find(cell, goal);
+      if(entry < 0) return null;
+      int route = routeOf[entry] - 1;
+      lastUsed[route] = ++clock;
+      ArrayDeque<Action> plan = follow(route, steps[entry], g);
+      if(plan != null) return plan;
+    }
+  }
+
+  /**
+   * Remembers a route.
+   * @param x The x distance of the start from the anthill
+   * @param y The y distance of the start from the anthill
+   * @param g The goal the route leads to
+   * @param plan The moves of the route
+   */
+  public void put(int x, int y, SearchGoal g, ArrayDeque<Action> plan){
+    String goal = g.planName();
+    int start = Position.pack(x, y);
+    int old = find(start, goal);
+    if(old >= 0 && steps[old] == 0) remove(routeOf[old] - 1);
+
+    byte[] path = new byte[plan.size()];
+    int i = 0;
+    for(Action a : plan){
+      path[i++] = (byte)a.getDirection().ordinal();
+    }
+    int slot = freeSlot();
+    starts[slot] = start;
+    goals[slot] = goal;
+    moves[slot] = path;
+    lastUsed[slot] = ++clock;
+    size++;
+    index(slot);
+  }
+
+  /**
+   * Drops every route through the new wall.
+   */
+  @Override
+  public void wallAdded(int x, int y){
+    int cell = Position.pack(x, y);
+    int entry;
+    while((entry = find(cell, null)) >= 0){
+      remove(routeOf[entry] - 1);
+    }
+  }
+
+  /**
+   * Returns the number of routes held.
+   */
+  public int size(){
+    return size;
+  }
+
+  /**
+   * Turns the rest of a route into a plan, or forgets the route if it no
+   * longer ends at a goal, like food that has been eaten.
+   * @param route The route's slot
+   * @param from The index of the first move to take
+   * @param g The goal the route must lead to
+   * @return The plan, or null if the route was forgotten
+   */
+  private ArrayDeque<Action> follow(int route, int from, SearchGoal g){
+    byte[] path = moves[route];
+    int x = Position.unpackX(starts[route]);
+    int y = Position.unpackY(starts[route]);
+    for(byte d : path){
+      x += AStarPlanner.DX[d];
+      y += AStarPlanner.DY[d];
+    }
+    if(!g.isGoal(x, y)){
+      remove(route);
+      return null;
+    }
+
+    ArrayDeque<Action> plan = new ArrayDeque<Action>(path.length - from);
+    for(int i = from; i < path.length; i++){
+      plan.add(Move.ACTIONS[path[i]]);
+    }
+    return plan;
+  }
+
+  /**
+   * Finds the entry of a route through a cell. A route that starts there is
+   * preferred over one that passes through it, and routes that end there are
+   * no use.
+   * @param cell The packed cell
+   * @param goal The name of the goal the route must lead to, or null for
+   * any route, including those that end there
+   * @return The entry, or -1 if there is none
+   */
+  private int find(int cell, String goal){
+    int mask = cells.length - 1;
+    int found = -1;
+    for(int i = hash(cell) & mask; routeOf[i] != 0; i = (i + 1) & mask){
+      if(cells[i] != cell) continue;
+      if(goal == null) return i;
+      int route = routeOf[i] - 1;
+      if(steps[i] == moves[route].length || !goals[route].equals(goal)){
+        continue;
+      }
+      if(steps[i] == 0) return i;
+      if(found < 0) found = i;
+    }
+    return found;
+  }
+
+  /**
+   * Returns a free slot, dropping the least recently used route if there
+   * isn't one.
+   */
+  private int freeSlot(){
+    int oldest = 0;
+    for(int slot = 0; slot < CAPACITY; slot++){
+      if(goals[slot] == null) return slot;
+      if(lastUsed[slot] < lastUsed[oldest]) oldest = slot;
+    }
+    remove(oldest);
+    return oldest;
+  }
+
+  /**
+   * Forgets a route.
+   */
+  private void remove(int route){
+    byte[] path = moves[route];
+    int x = Position.unpackX(starts[route]);
+    int y = Position.unpackY(starts[route]);
+    unindex(Position.pack(x, y), route, 0);
+    for(int i = 0; i < path.length; i++){
+      x += AStarPlanner.DX[path[i]];
+      y += AStarPlanner.DY[path[i]];
+      unindex(Position.pack(x, y), route, i + 1);
+    }
+    goals[route] = null;
+    moves[route] = null;
+    size--;
+  }
+
+  /**
+   * Points every cell on a route back at it.
+   */
+  private void index(int route){
+    byte[] path = moves[route];
+    int x = Position.unpackX(starts[route]);
+    int y = Position.unpackY(starts[route]);
+    add(Position.pack(x, y), route, 0);
+    for(int i = 0; i < path.length; i++){
+      x += AStarPlanner.DX[path[i]];
+      y += AStarPlanner.DY[path[i]];
+      add(Position.pack(x, y), route, i + 1);
+    }
+  }
+
+  /**
+   * Adds an entry to the table, growing it to keep it at most half full.
+   */
+  private void add(int cell, int route, int step){
+    if((entries + 1) * 2 > cells.length) grow();
+    int mask = cells.length - 1;
+    int i = hash(cell) & mask;
+    while(routeOf[i] != 0){
+      i = (i + 1) & mask;
+    }
+    cells[i] = cell;
+    routeOf[i] = route + 1;
+    steps[i] = step;
+    entries++;
+  }
+
+  /**
+   * Removes an entry from the table, shifting the entries after it back so
+   * no probe sequence is broken.
+   */
+  private void unindex(int cell, int route, int step){
+    int mask = cells.length - 1;
+    int i = hash(cell) & mask;
+    while(routeOf[i] != 0 && (cells[i] != cell ||
+                              routeOf[i] != route + 1 || steps[i] != step)){
+      i = (i + 1) & mask;
+    }
+    if(routeOf[i] == 0) return;
+
+    for(int j = (i + 1) & mask; routeOf[j] != 0; j = (j + 1) & mask){
+      // An entry stays put if its home is between the hole and itself.
+      int home = hash(cells[j]) & mask;
+      if(i <= j ? (i < home && home <= j) : (i < home || home <= j)){
+        continue;
+      }
+      cells[i] = cells[j];
+      routeOf[i] = routeOf[j];
+      steps[i] = steps[j];
+      i = j;
+    }
+    routeOf[i] = 0;
+    entries--;
+  }
+
+  /**
+   * Doubles the size of the table.
+   */
+  private void grow(){
+    int[] oldCells = cells;
+    int[] oldRoutes = routeOf;
+    int[] oldSteps = steps;
+    cells = new int[oldCells.length * 2];
+    routeOf = new int[oldCells.length * 2];
+    steps = new int[oldCells.length * 2];
+    int mask = cells.length - 1;
+    for(int j = 0; j < oldCells.length; j++){
+      if(oldRoutes[j] == 0) continue;
+      int i = hash(oldCells[j]) & mask;
+      while(routeOf[i] != 0){
+        i = (i + 1) & mask;
+      }
+      cells[i] = oldCells[j];
+      routeOf[i] = oldRoutes[j];
+      steps[i] = oldSteps[j];
+    }
+  }
+
+  /**
+   * Spreads a packed cell over the table.
+   */
+  private static int hash(int cell){
+    int h = cell * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,31 @@
+/**
+ * This is used to define the different search goals. It makes it so we can
+ * define a single search function, and swap the search algorithm without
+ * touching the goals.
+ */
+public interface SearchGoal{
+  /**
+   * This is the goal test.
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   * @return true if the position is at a goal state.
+   */
+  public boolean isGoal(int x, int y);
+
+  /**
+   * Estimates the number of moves from a position to the closest goal. Must
+   * never overestimate. Used by searches that are guided by a heuristic.
+   * @param x The x distance from the anthill
+   * @param y The y distance from the anthill
+   * @return A lower bound on the moves needed to reach a goal
+   */
+  public default int estimate(int x, int y){
+    return 0;
+  }
+
+  /**
+   * This simply returns an identifying string. Used to determine which
+   * SearchGoal we are using
+   */
+  public String planName();
+}
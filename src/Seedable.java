@@ -0,0 +1,12 @@
+/**
+ * Ants that make random choices can implement this so that simulators can
+ * seed them. Two ants given the same seed and the same inputs make exactly
+ * the same moves.
+ */
+public interface Seedable{
+  /**
+   * Seeds the ant's random number generator.
+   * @param seed The new seed
+   */
+  public void setSeed(long seed);
+}
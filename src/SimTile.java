@@ -0,0 +1,107 @@
+import ants.*;
+import java.util.ArrayList;
+
+/**
+ * A single tile of the headless simulator's world. Keeps track of how much
+ * food is on the tile and which ants are standing on it.
+ */
+public class SimTile implements Tile{
+  /**
+   * Whether or not ants can walk on this tile. Water tiles are not travelable.
+   */
+  private final boolean travelable;
+
+  /**
+   * True if this tile is the anthill.
+   */
+  private final boolean home;
+
+  /**
+   * The amount of food currently on the tile.
+   */
+  private int food;
+
+  /**
+   * The ants that are currently standing on this tile.
+   */
+  private ArrayList<Ant> ants = new ArrayList<Ant>(2);
+
+  /**
+   * Primary constructor.
+   * @param travelable Whether or not ants can walk on this tile
+   * @param home True if this tile is the anthill
+   * @param food The amount of food that starts on this tile
+   */
+  SimTile(boolean travelable, boolean home, int food){
+    this.travelable = travelable;
+    this.home = home;
+    this.food = food;
+  }
+
+  @Override
+  public int getAmountOfFood(){
+    return food;
+  }
+
+  @Override
+  public int getNumAnts(){
+    return ants.size();
+  }
+
+  @Override
+  public boolean isTravelable(){
+    return travelable;
+  }
+
+  /**
+   * Returns true if this tile is the anthill.
+   */
+  public boolean isHome(){
+    return home;
+  }
+
+  /**
+   * Sets the amount of food on this tile.
+   * @param food The new amount of food
+   */
+  public void setAmountOfFood(int food){
+    this.food = food;
+  }
+
+  /**
+   * Adds a piece of food to the tile.
+   */
+  public void incrementFood(){
+    food++;
+  }
+
+  /**
+   * Removes a piece of food from the tile.
+   */
+  public void decrementFood(){
+    food--;
+  }
+
+  /**
+   * Places an ant on this tile.
+   * @param a The ant arriving on the tile
+   */
+  public void addAnt(Ant a){
+    ants.add(a);
+  }
+
+  /**
+   * Removes an ant from this tile.
+   * @param a The ant leaving the tile
+   */
+  public void removeAnt(Ant a){
+    ants.remove(a);
+  }
+
+  /**
+   * Gets the ants currently standing on this tile.
+   */
+  public ArrayList<Ant> getAnts(){
+    return ants;
+  }
+}
@@ -0,0 +1,298 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The world that the headless simulator runs on. Worlds can either be
+ * generated the same way AntsSimulator.jar generates them, or loaded from a
+ * world file.
+ *
+ * A world file starts with a line containing the width and the height. The
+ * next height lines each contain width characters: '#' for water, '.' for
+ * grass, and 'H' for the anthill. Every line after that is a food pile, given
+ * as "x y amount". Lines starting with ';' are comments.
+ */
+public class SimWorld{
+  /**
+   * The chance that any given inside tile is water.
+   */
+  public static final double WATER_CHANCE = 0.16;
+
+  /**
+   * The total amount of food placed in a generated world.
+   */
+  public static final int TOTAL_FOOD = 750;
+
+  /**
+   * The most food a single generated pile can hold.
+   */
+  public static final int MAX_FOOD = 100;
+
+  /**
+   * The tiles of the world, indexed as tiles[x][y]. North is towards y = 0.
+   */
+  private SimTile[][] tiles;
+
+  /**
+   * The x coordinate of the anthill.
+   */
+  private int homeX;
+
+  /**
+   * The y coordinate of the anthill.
+   */
+  private int homeY;
+
+  /**
+   * Primary constructor.
+   * @param tiles The tiles of the world, indexed as tiles[x][y]
+   * @param homeX The x coordinate of the anthill
+   * @param homeY The y coordinate of the anthill
+   */
+  SimWorld(SimTile[][] tiles, int homeX, int homeY){
+    this.tiles = tiles;
+    this.homeX = homeX;
+    this.homeY = homeY;
+  }
+
+  /**
+   * Generates a world the same way the GUI simulator does. The border is all
+   * water, the inside tiles are water with a chance of WATER_CHANCE, and
+   * TOTAL_FOOD pieces of food are spread over width * height / 16 piles.
+   * @param width The width of the world
+   * @param height The height of the world
+   * @param rand The random number generator. Use a seeded one for
+   * reproducible worlds.
+   * @return The new world
+   */
+  public static SimWorld generate(int width, int height, Random rand){
+    if(width < 3 || height < 3){
+      throw new IllegalArgumentException("width and height must be > 2");
+    }
+    int homeX = 1 + (int)(rand.nextDouble() * (width - 2));
+    int homeY = 1 + (int)(rand.nextDouble() * (height - 2));
+
+    SimTile[][] tiles = new SimTile[width][height];
+    for(int x = 0; x < width; x++){
+      for(int y = 0; y < height; y++){
+        if(x == homeX && y == homeY){
+          tiles[x][y] = new SimTile(true, true, 0);
+        }else if(x == 0 || y == 0 || x == width - 1 || y == height - 1 ||
+                 rand.nextDouble() < WATER_CHANCE){
+          tiles[x][y] = new SimTile(false, false, 0);
+        }else{
+          tiles[x][y] = new SimTile(true, false, 0);
+        }
+      }
+    }
+
+    // Split the food evenly between the piles, then shuffle it around.
+    int[] piles = new int[Math.max(1, width * height / 16)];
+    for(int i = 0; i < piles.length; i++){
+      piles[i] = TOTAL_FOOD / piles.length;
+    }
+    for(int i = 0; i < 1000; i++){
+      int from = (int)(rand.nextDouble() * piles.length);
+      int to = (int)(rand.nextDouble() * piles.length);
+      if(piles[from] > 0 && piles[to] < MAX_FOOD){
+        piles[from]--;
+        piles[to]++;
+      }
+    }
+
+    // Drop each pile onto an empty grass tile.
+    for(int amount : piles){
+      if(amount == 0) continue;
+      SimTile t;
+      do{
+        t = tiles[(int)(rand.nextDouble() * width)]
+                 [(int)(rand.nextDouble() * height)];
+      }while(!t.isTravelable() || t.isHome() || t.getAmountOfFood() != 0);
+      t.setAmountOfFood(amount);
+    }
+    return new SimWorld(tiles, homeX, homeY);
+  }
+
+  /**
+   * Generates a world with the given wall and food densities, for stress
+   * testing on large worlds. The border is all water, every other tile is
+   * water with a chance of wallDensity, and every grass tile holds a pile of
+   * 1 to maxFood food with a chance of foodDensity.
+   * @param width The width of the world
+   * @param height The height of the world
+   * @param wallDensity The chance of an inside tile being water
+   * @param foodDensity The chance of a grass tile holding food
+   * @param maxFood The most food a single pile can hold
+   * @param rand The random number generator
+   * @return The new world
+   */
+  public static SimWorld generate(int width, int height, double wallDensity,
+                                  double foodDensity, int maxFood, 
+                                  Random rand){
+    if(width < 3 || height < 3){
+      throw new IllegalArgumentException("width and height must be > 2");
+    }
+    int homeX = 1 + (int)(rand.nextDouble() * (width - 2));
+    int homeY = 1 + (int)(rand.nextDouble() * (height - 2));
+
+    SimTile[][] tiles = new SimTile[width][height];
+    for(int x = 0; x < width; x++){
+      for(int y = 0; y < height; y++){
+        if(x == homeX && y == homeY){
+          tiles[x][y] = new SimTile(true, true, 0);
+        }else if(x == 0 || y == 0 || x == width - 1 || y == height - 1 ||
+                 rand.nextDouble() < wallDensity){
+          tiles[x][y] = new SimTile(false, false, 0);
+        }else{
+          int food = rand.nextDouble() < foodDensity ? 
+                     1 + rand.nextInt(maxFood) : 0;
+          tiles[x][y] = new SimTile(true, false, food);
+        }
+      }
+    }
+    return new SimWorld(tiles, homeX, homeY);
+  }
+
+  /**
+   * Loads a world from a world file.
+   * @param file The file to read
+   * @return The loaded world
+   */
+  public static SimWorld load(File file) throws IOException{
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try{
+      String[] size = nextLine(reader).trim().split("\\s+");
+      int width = Integer.parseInt(size[0]);
+      int height = Integer.parseInt(size[1]);
+      SimTile[][] tiles = new SimTile[width][height];
+      int homeX = -1, homeY = -1;
+
+      for(int y = 0; y < height; y++){
+        String row = nextLine(reader);
+        if(row == null || row.length() < width){
+          throw new IOException("Row " + y + " of " + file + " is too short");
+        }
+        for(int x = 0; x < width; x++){
+          char c = row.charAt(x);
+          if(c == 'H'){
+            homeX = x;
+            homeY = y;
+          }
+          tiles[x][y] = new SimTile(c != '#', c == 'H', 0);
+        }
+      }
+      if(homeX < 0){
+        throw new IOException(file + " has no anthill");
+      }
+
+      String line;
+      while((line = nextLine(reader)) != null){
+        String[] pile = line.trim().split("\\s+");
+        int x = Integer.parseInt(pile[0]);
+        int y = Integer.parseInt(pile[1]);
+        tiles[x][y].setAmountOfFood(Integer.parseInt(pile[2]));
+      }
+      return new SimWorld(tiles, homeX, homeY);
+    }catch(RuntimeException e){
+      throw new IOException("Malformed world file " + file, e);
+    }finally{
+      reader.close();
+    }
+  }
+
+  /**
+   * Reads the next line that isn't blank or a comment.
+   * @param reader The reader we are reading from
+   * @return The line, or null at the end of the file
+   */
+  private static String nextLine(BufferedReader reader) throws IOException{
+    String line;
+    while((line = reader.readLine()) != null){
+      if(line.trim().length() > 0 && !line.startsWith(";")) return line;
+    }
+    return null;
+  }
+
+  /**
+   * Writes this world to a world file that load() can read back.
+   * @param file The file to write
+   */
+  public void write(File file) throws IOException{
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    try{
+      writer.write(getWidth() + " " + getHeight());
+      writer.newLine();
+      for(int y = 0; y < getHeight(); y++){
+        for(int x = 0; x < getWidth(); x++){
+          SimTile t = tiles[x][y];
+          writer.write(t.isHome() ? 'H' : t.isTravelable() ? '.' : '#');
+        }
+        writer.newLine();
+      }
+      for(int y = 0; y < getHeight(); y++){
+        for(int x = 0; x < getWidth(); x++){
+          if(tiles[x][y].getAmountOfFood() > 0){
+            writer.write(x + " " + y + " " + tiles[x][y].getAmountOfFood());
+            writer.newLine();
+          }
+        }
+      }
+    }finally{
+      writer.close();
+    }
+  }
+
+  /**
+   * Gets the tile at the given coordinates.
+   * @param x The x coordinate
+   * @param y The y coordinate
+   */
+  public SimTile getTile(int x, int y){
+    return tiles[x][y];
+  }
+
+  /**
+   * Returns the width of the world.
+   */
+  public int getWidth(){
+    return tiles.length;
+  }
+
+  /**
+   * Returns the height of the world.
+   */
+  public int getHeight(){
+    return tiles[0].length;
+  }
+
+  /**
+   * Returns the x coordinate of the anthill.
+   */
+  public int getHomeX(){
+    return homeX;
+  }
+
+  /**
+   * Returns the y coordinate of the anthill.
+   */
+  public int getHomeY(){
+    return homeY;
+  }
+
+  /**
+   * Returns the total amount of food lying on the world's tiles.
+   */
+  public int getTotalFood(){
+    int total = 0;
+    for(int x = 0; x < getWidth(); x++){
+      for(int y = 0; y < getHeight(); y++){
+        total += tiles[x][y].getAmountOfFood();
+      }
+    }
+    return total;
+  }
+}
@@ -0,0 +1,175 @@
+import ants.*;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * A breadth first search outwards from the ant that is kept between searches.
+ * The cells it reaches are recorded in the order it reaches them, with the
+ * direction each was entered from, so a search for any goal is a walk down
+ * that list to the first cell that is a goal. The sweep only goes as far as
+ * the searches so far have needed, and carries on from there if a later
+ * search needs to look further. It starts over when the ant moves or a tile
+ * becomes walkable or stops being walkable, so looking for food, somewhere to
+ * deliver it and the unknown all share one sweep.
+ */
+public class SweepPlanner implements Planner{
+  /**
+   * The number of positions expanded or checked by the most recent search.
+   */
+  private int expanded = 0;
+
+  /**
+   * The map the sweep was made on.
+   */
+  private WorldMap map;
+
+  /**
+   * The shape of the map when the sweep was made.
+   */
+  private int shapeVersion;
+
+  /**
+   * The position the sweep started from.
+   */
+  private int startX, startY;
+
+  /**
+   * The extent of the map when the sweep was made.
+   */
+  private int minX, minY, width;
+
+  /**
+   * Identifies the current sweep. Cells whose stamp doesn't match haven't
+   * been reached yet, so the arrays never need clearing.
+   */
+  private int sweepId = 0;
+
+  /**
+   * The sweep that last reached each cell.
+   */
+  private int[] stamp = new int[0];
+
+  /**
+   * The direction that was taken to enter each cell.
+   */
+  private byte[] parent = new byte[0];
+
+  /**
+   * The cells reached so far, closest first.
+   */
+  private int[] queue = new int[0];
+
+  /**
+   * The number of cells in the queue that have been expanded.
+   */
+  private int head = 0;
+
+  /**
+   * The number of cells in the queue.
+   */
+  private int tail = 0;
+
+  /**
+   * The order the directions are tried in, shuffled at every cell so ties
+   * are broken randomly.
+   */
+  private final int[] order = {0, 1, 2, 3};
+
+  @Override
+  public ArrayDeque<Action> plan(WorldMap map, int x, int y, boolean hasFood,
+                                 SearchGoal g, Random rand){
+    expanded = 0;
+    if(!isCurrent(map, x, y)){
+      restart(map, x, y);
+    }
+
+    for(int i = 0; ; i++){
+      while(i >= tail && head < tail){
+        expand(queue[head++], rand);
+      }
+      if(i >= tail) return null;
+      expanded++;
+
+      int cell = queue[i];
+      if(g.isGoal(cell % width + minX, cell / width + minY)){
+        return path(cell);
+      }
+    }
+  }
+
+  @Override
+  public int getNodesExpanded(){
+    return expanded;
+  }
+
+  /**
+   * Tells whether the current sweep still describes the map from here.
+   */
+  private boolean isCurrent(WorldMap map, int x, int y){
+    return this.map == map && map.getShapeVersion() == shapeVersion &&
+           startX == x && startY == y && map.getMinX() == minX &&
+           map.getMinY() == minY && map.getWidth() == width;
+  }
+
+  /**
+   * Starts a new sweep from a position.
+   */
+  private void restart(WorldMap map, int x, int y){
+    if(AntMetrics.ENABLED) AntMetrics.SWEEPS_STARTED.increment();
+    this.map = map;
+    this.shapeVersion = map.getShapeVersion();
+    this.startX = x;
+    this.startY = y;
+    this.minX = map.getMinX();
+    this.minY = map.getMinY();
+    this.width = map.getWidth();
+
+    int cells = width * map.getHeight();
+    if(stamp.length < cells){
+      stamp = new int[cells];
+      parent = new byte[cells];
+      queue = new int[cells];
+      sweepId = 0;
+    }
+    sweepId++;
+
+    int start = (y - minY) * width + (x - minX);
+    stamp[start] = sweepId;
+    queue[0] = start;
+    head = 0;
+    tail = 1;
+  }
+
+  /**
+   * Adds the unreached walkable neighbours of a cell to the queue.
+   */
+  private void expand(int cell, Random rand){
+    int cx = cell % width + minX;
+    int cy = cell / width + minY;
+    AStarPlanner.shuffle(order, rand);
+    for(int d : order){
+      if(!map.isPassable(cx + AStarPlanner.DX[d], cy + AStarPlanner.DY[d])){
+        continue;
+      }
+      int next = cell + AStarPlanner.DX[d] + AStarPlanner.DY[d] * width;
+      if(stamp[next] == sweepId) continue;
+      stamp[next] = sweepId;
+      parent[next] = (byte)d;
+      queue[tail++] = next;
+    }
+  }
+
+  /**
+   * Follows the parents back from a cell to build the plan.
+   */
+  private ArrayDeque<Action> path(int cell){
+    int start = (startY - minY) * width + (startX - minX);
+    ArrayDeque<Action> moves = new ArrayDeque<Action>();
+    while(cell != start){
+      int d = parent[cell];
+      moves.addFirst(Move.ACTIONS[d]);
+      cell -= AStarPlanner.DX[d] + AStarPlanner.DY[d] * width;
+    }
+    return moves;
+  }
+}
@@ -0,0 +1,346 @@
+import ants.*;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Plays many headless games of several ant strategies over many worlds and
+ * seeds, and ranks the strategies. Every game runs on its own world as a
+ * separate task on a ForkJoinPool, so all of the cores are used. Games are
+ * seeded from the world and seed index alone, so every strategy plays exactly
+ * the same worlds and reruns give the same results.
+ *
+ * Usage: TournamentRunner [-ants MappingAnt,RadiusAnt] [-worlds 40x40,file]
+ *                         [-seeds 10] [-ticks 2000] [-startingAnts 10]
+ *                         [-turnsPerNewAnt 0] [-threads cores] [-seed 0]
+ *                         [-csv file]
+ */
+public class TournamentRunner{
+  /**
+   * The result of a single game.
+   */
+  public static class GameResult{
+    /**
+     * The name of the Ant implementation.
+     */
+    public String ant;
+
+    /**
+     * The world the game was played on.
+     */
+    public String world;
+
+    /**
+     * The seed of the game.
+     */
+    public long seed;
+
+    /**
+     * The number of ticks that were played.
+     */
+    public int ticks;
+
+    /**
+     * The amount of food on the anthill at the end of the game.
+     */
+    public int foodDelivered;
+
+    /**
+     * The turn the game was won on, or -1.
+     */
+    public int wonOnTurn;
+
+    /**
+     * The average time of a getAction call in nanoseconds.
+     */
+    public long nanosPerAction;
+
+    /**
+     * The total number of bytes sent between ants.
+     */
+    public long messageBytes;
+
+    /**
+     * The estimated heap held by each ant at the end of the game.
+     */
+    public long heapPerAnt;
+
+    /**
+     * Returns the food delivered per tick.
+     */
+    public double foodPerTick(){
+      return ticks == 0 ? 0 : (double)foodDelivered / ticks;
+    }
+  }
+
+  /**
+   * The combined results of every game played by one strategy.
+   */
+  public static class Standing{
+    /**
+     * The name of the Ant implementation.
+     */
+    public String ant;
+
+    /**
+     * The number of games played.
+     */
+    public int games;
+
+    /**
+     * The number of games won.
+     */
+    public int wins;
+
+    /**
+     * The sum of the food per tick over all games.
+     */
+    public double foodPerTick;
+
+    /**
+     * The sum of the average getAction times over all games.
+     */
+    public double nanosPerAction;
+
+    /**
+     * The sum of the message bytes per tick over all games.
+     */
+    public double messageBytesPerTick;
+
+    /**
+     * The sum of the heap per ant over all games.
+     */
+    public double heapPerAnt;
+
+    /**
+     * Adds a game to the standing.
+     * @param r The result of the game
+     */
+    public void add(GameResult r){
+      games++;
+      if(r.wonOnTurn >= 0) wins++;
+      foodPerTick += r.foodPerTick();
+      nanosPerAction += r.nanosPerAction;
+      messageBytesPerTick += r.ticks == 0 ? 0 : (double)r.messageBytes / r.ticks;
+      heapPerAnt += r.heapPerAnt;
+    }
+
+    /**
+     * Converts to a string, averaging over the games played.
+     */
+    public String toString(){
+      return String.format(Locale.ROOT, 
+                           "%-20s %6d %5d %12.4f %14.0f %14.0f %12.0f",
+                           ant, games, wins, foodPerTick / games,
+                           nanosPerAction / games, messageBytesPerTick / games,
+                           heapPerAnt / games);
+    }
+  }
+
+  /**
+   * The number of ticks each game is played for.
+   */
+  private int ticks;
+
+  /**
+   * The number of ants on the anthill at the start of each game.
+   */
+  private int startingAnts;
+
+  /**
+   * A new ant is spawned every turnsPerNewAnt turns. Zero disables spawning.
+   */
+  private int turnsPerNewAnt;
+
+  /**
+   * Primary constructor.
+   * @param ticks The number of ticks each game is played for
+   * @param startingAnts The number of ants at the start of each game
+   * @param turnsPerNewAnt A new ant is spawned every turnsPerNewAnt turns
+   */
+  TournamentRunner(int ticks, int startingAnts, int turnsPerNewAnt){
+    this.ticks = ticks;
+    this.startingAnts = startingAnts;
+    this.turnsPerNewAnt = turnsPerNewAnt;
+  }
+
+  /**
+   * Plays a single game on a world of its own.
+   * @param ant The Ant implementation
+   * @param world The world file, or WIDTHxHEIGHT
+   * @param seed The seed for the world and the ants
+   * @return The result of the game
+   */
+  public GameResult play(Class<? extends Ant> ant, String world, long seed)
+    throws IOException{
+    HeadlessSimulator sim = 
+      new HeadlessSimulator(HeadlessSimulator.loadWorld(world, seed), ant,
+                            startingAnts, turnsPerNewAnt, seed);
+    sim.run(ticks);
+
+    GameResult r = new GameResult();
+    r.ant = ant.getName();
+    r.world = world;
+    r.seed = seed;
+    r.ticks = sim.getTicks();
+    r.foodDelivered = sim.getFoodDelivered();
+    r.wonOnTurn = sim.getWonOnTurn();
+    r.nanosPerAction = sim.getNanosPerAction();
+    r.messageBytes = sim.getMessageBytes();
+    long heap = 0;
+    for(Ant a : sim.getAnts()){
+      heap += HeapEstimator.deepSize(a);
+    }
+    r.heapPerAnt = sim.getNumAnts() == 0 ? 0 : heap / sim.getNumAnts();
+    return r;
+  }
+
+  /**
+   * Plays every strategy on every world with every seed. 
+   * @param ants The Ant implementations to compare
+   * @param worlds The worlds to play on
+   * @param seeds The number of seeds to play each world with
+   * @param baseSeed The seed the game seeds are derived from
+   * @param pool The pool to run the games on
+   * @return The result of every game
+   */
+  public ArrayList<GameResult> playAll(ArrayList<Class<? extends Ant>> ants,
+                                       String[] worlds, int seeds,
+                                       long baseSeed, ForkJoinPool pool){
+    ArrayList<ForkJoinTask<GameResult>> tasks = 
+      new ArrayList<ForkJoinTask<GameResult>>();
+    for(int w = 0; w < worlds.length; w++){
+      for(int s = 0; s < seeds; s++){
+        final long seed = baseSeed * 1000003L + w * 7919L + s;
+        final String world = worlds[w];
+        for(final Class<? extends Ant> ant : ants){
+          tasks.add(pool.submit(new Callable<GameResult>(){
+            public GameResult call() throws IOException{
+              return play(ant, world, seed);
+            }
+          }));
+        }
+      }
+    }
+
+    ArrayList<GameResult> results = new ArrayList<GameResult>(tasks.size());
+    for(ForkJoinTask<GameResult> task : tasks){
+      results.add(task.join());
+    }
+    return results;
+  }
+
+  /**
+   * Combines the game results into standings, best food per tick first.
+   * @param results The result of every game
+   * @return The ranked standings
+   */
+  public static ArrayList<Standing> rank(ArrayList<GameResult> results){
+    LinkedHashMap<String, Standing> standings = 
+      new LinkedHashMap<String, Standing>();
+    for(GameResult r : results){
+      Standing s = standings.get(r.ant);
+      if(s == null){
+        s = new Standing();
+        s.ant = r.ant;
+        standings.put(r.ant, s);
+      }
+      s.add(r);
+    }
+    ArrayList<Standing> ranked = new ArrayList<Standing>(standings.values());
+    Collections.sort(ranked, new Comparator<Standing>(){
+      public int compare(Standing a, Standing b){
+        return Double.compare(b.foodPerTick / b.games, 
+                              a.foodPerTick / a.games);
+      }
+    });
+    return ranked;
+  }
+
+  /**
+   * Writes every game result as CSV.
+   * @param results The results to write
+   * @param file The file to write to
+   */
+  public static void writeCsv(ArrayList<GameResult> results, String file)
+    throws IOException{
+    PrintWriter out = new PrintWriter(new FileWriter(file));
+    try{
+      out.println("ant,world,seed,ticks,food,wonOnTurn,nsPerAction," +
+                  "messageBytes,heapPerAnt");
+      for(GameResult r : results){
+        out.println(r.ant + "," + r.world + "," + r.seed + "," + r.ticks + 
+                    "," + r.foodDelivered + "," + r.wonOnTurn + "," + 
+                    r.nanosPerAction + "," + r.messageBytes + "," + 
+                    r.heapPerAnt);
+      }
+    }finally{
+      out.close();
+    }
+  }
+
+  /**
+   * Runs a tournament and prints the standings.
+   */
+  public static void main(String[] args) throws Exception{
+    String antNames = "MappingAnt,RadiusAnt";
+    String worlds = "40x40";
+    int seeds = 10, ticks = 2000, startingAnts = 10, turnsPerNewAnt = 0;
+    int threads = Runtime.getRuntime().availableProcessors();
+    long seed = 0;
+    String csv = null;
+
+    for(int i = 0; i + 1 < args.length; i += 2){
+      String value = args[i + 1];
+      if(args[i].equals("-ants")) antNames = value;
+      else if(args[i].equals("-worlds")) worlds = value;
+      else if(args[i].equals("-seeds")) seeds = Integer.parseInt(value);
+      else if(args[i].equals("-ticks")) ticks = Integer.parseInt(value);
+      else if(args[i].equals("-startingAnts")) 
+        startingAnts = Integer.parseInt(value);
+      else if(args[i].equals("-turnsPerNewAnt"))
+        turnsPerNewAnt = Integer.parseInt(value);
+      else if(args[i].equals("-threads")) threads = Integer.parseInt(value);
+      else if(args[i].equals("-seed")) seed = Long.parseLong(value);
+      else if(args[i].equals("-csv")) csv = value;
+      else throw new IllegalArgumentException("Unknown option " + args[i]);
+    }
+
+    ArrayList<Class<? extends Ant>> ants = new ArrayList<Class<? extends Ant>>();
+    for(String name : antNames.split(",")){
+      ants.add(HeadlessSimulator.loadAnt(name.trim()));
+    }
+
+    TournamentRunner runner = 
+      new TournamentRunner(ticks, startingAnts, turnsPerNewAnt);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    long start = System.nanoTime();
+    ArrayList<GameResult> results;
+    try{
+      results = runner.playAll(ants, worlds.split(","), seeds, seed, pool);
+    }finally{
+      pool.shutdown();
+    }
+    long elapsed = System.nanoTime() - start;
+
+    System.out.println(String.format(Locale.ROOT, 
+                       "%-20s %6s %5s %12s %14s %14s %12s", "ant", "games",
+                       "wins", "food/tick", "ns/getAction", "msgBytes/tick",
+                       "heap/ant"));
+    for(Standing s : rank(results)){
+      System.out.println(s);
+    }
+    System.out.println(results.size() + " games on " + threads + 
+                       " threads in " + elapsed / 1000000 + " ms");
+    if(csv != null) writeCsv(results, csv);
+    AntMetrics.dump();
+  }
+}
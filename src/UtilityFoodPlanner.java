@@ -0,0 +1,188 @@
+import ants.*;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Plans a trip to the food that is expected to pay off best, rather than the
+ * closest food. Each food tile the search reaches is scored by the chance
+ * there is still food there, divided by the moves it takes to get there and
+ * then back to where food is delivered. A tile seen long ago is less likely
+ * to still have food, unless there was a lot of it. A single breadth first
+ * search finds the distances to all the candidates, and stops as soon as no
+ * tile further away could beat the best one found.
+ */
+public class UtilityFoodPlanner implements Planner{
+  /**
+   * Food beyond this much on one tile doesn't make it any more likely that
+   * some is left.
+   */
+  private static final int RICH_PILE = 5;
+
+  /**
+   * After this many timesteps each piece of food seen is only thought to
+   * have even odds of still being there.
+   */
+  private static final int STALE_STEPS = 50;
+
+  /**
+   * The search stops after scoring this many food tiles.
+   */
+  private static final int MAX_CANDIDATES = 32;
+
+  /**
+   * The destinations food is delivered to.
+   */
+  private final SearchGoal home;
+
+  /**
+   * The name of the flow field used for the distances back home.
+   */
+  private final String homeField;
+
+  /**
+   * The number of positions expanded by the most recent search.
+   */
+  private int expanded = 0;
+
+  /**
+   * Identifies the current search, so the arrays never need clearing.
+   */
+  private int searchId = 0;
+
+  /**
+   * The search that last reached each cell.
+   */
+  private int[] stamp = new int[0];
+
+  /**
+   * The number of moves from the start to each cell.
+   */
+  private int[] distance = new int[0];
+
+  /**
+   * The direction that was taken to enter each cell.
+   */
+  private byte[] parent = new byte[0];
+
+  /**
+   * The breadth first search queue of cell indices.
+   */
+  private int[] queue = new int[0];
+
+  /**
+   * The order the directions are tried in, shuffled at every cell so ties
+   * are broken randomly.
+   */
+  private final int[] order = {0, 1, 2, 3};
+
+  /**
+   * Creates the planner.
+   * @param homeField The name of the map's flow field that leads home
+   * @param home The destinations food is delivered to
+   */
+  public UtilityFoodPlanner(String homeField, SearchGoal home){
+    this.homeField = homeField;
+    this.home = home;
+  }
+
+  /**
+   * Finds the best food to go after.
+   * @param g Decides which tiles with food are candidates
+   */
+  @Override
+  public ArrayDeque<Action> plan(WorldMap map, int x, int y, boolean hasFood,
+                                 SearchGoal g, Random rand){
+    expanded = 0;
+    int width = map.getWidth();
+    int minX = map.getMinX();
+    int minY = map.getMinY();
+    prepare(width * map.getHeight());
+    FlowField homeDistances = map.flowField(homeField, home);
+
+    // The ant has just seen the tile it is standing on.
+    int now = map.getLastSeen(x, y);
+
+    int start = (y - minY) * width + (x - minX);
+    stamp[start] = searchId;
+    distance[start] = 0;
+    int head = 0, tail = 0;
+    queue[tail++] = start;
+
+    int best = -1;
+    double bestScore = 0;
+    int candidates = 0;
+    AStarPlanner.resetOrder(order);
+    while(head < tail){
+      int cell = queue[head++];
+      int d = distance[cell];
+
+      // Nothing this far away can beat the best we have.
+      if(best >= 0 && 1.0 / Math.max(d, 1) <= bestScore) break;
+      expanded++;
+
+      int cx = cell % width + minX;
+      int cy = cell / width + minY;
+      if(g.isGoal(cx, cy)){
+        int back = homeDistances.distance(map, cx, cy);
+        if(back >= 0){
+          // The chance that at least one piece of the food is still there.
+          int age = now - map.getLastSeen(cx, cy);
+          double gone = age / (double)(STALE_STEPS + age);
+          double expected = 1 - Math.pow(gone, 
+                                         Math.min(map.getFood(cx, cy), 
+                                                  RICH_PILE));
+          double score = expected / Math.max(d + back, 1);
+          if(best < 0 || score > bestScore){
+            best = cell;
+            bestScore = score;
+          }
+          if(++candidates == MAX_CANDIDATES) break;
+        }
+      }
+
+      AStarPlanner.shuffle(order, rand);
+      for(int dir : order){
+        int nx = cx + AStarPlanner.DX[dir];
+        int ny = cy + AStarPlanner.DY[dir];
+        if(!map.isPassable(nx, ny)) continue;
+        int next = cell + AStarPlanner.DX[dir] + AStarPlanner.DY[dir] * width;
+        if(stamp[next] == searchId) continue;
+        stamp[next] = searchId;
+        distance[next] = d + 1;
+        parent[next] = (byte)dir;
+        queue[tail++] = next;
+      }
+    }
+    if(best < 0) return null;
+
+    // Follow the parents back from the chosen food to build the plan.
+    ArrayDeque<Action> moves = new ArrayDeque<Action>();
+    int cell = best;
+    while(cell != start){
+      int dir = parent[cell];
+      moves.addFirst(Move.ACTIONS[dir]);
+      cell -= AStarPlanner.DX[dir] + AStarPlanner.DY[dir] * width;
+    }
+    return moves;
+  }
+
+  @Override
+  public int getNodesExpanded(){
+    return expanded;
+  }
+
+  /**
+   * Starts a new search, making sure the arrays can hold every cell.
+   * @param cells The number of cells in the map
+   */
+  private void prepare(int cells){
+    if(stamp.length < cells){
+      stamp = new int[cells];
+      distance = new int[cells];
+      parent = new byte[cells];
+      queue = new int[cells];
+      searchId = 0;
+    }
+    searchId++;
+  }
+}
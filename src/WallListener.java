@@ -0,0 +1,12 @@
+/**
+ * Told when a WorldMap learns that a tile it thought was walkable is a wall,
+ * so anything planned through that tile can be thrown away.
+ */
+public interface WallListener{
+  /**
+   * Called after the map has recorded the wall.
+   * @param x The x distance of the wall from the anthill
+   * @param y The y distance of the wall from the anthill
+   */
+  public void wallAdded(int x, int y);
+}
@@ -1,33 +1,78 @@
 import ants.*;
 import java.io.DataOutputStream;
 import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.io.IOException;
 
 public class WorldMap{
 
+  /**
+   * Starts every checkpoint file.
+   */
+  public static final int CHECKPOINT_MAGIC = 0x414e544d;
+
+  /**
+   * The version of the checkpoint format.
+   */
+  public static final int CHECKPOINT_VERSION = 1;
+
+  /**
+   * The state of a cell in a checkpoint.
+   */
+  private static final byte UNKNOWN = 0, OPEN = 1, WALL = 2;
+
+  /**
+   * The timestep of cells read from a checkpoint. Ants see everything at
+   * later timesteps, and cells with this timestep are never shifted by
+   * adjustTimes() or a merge, so a checkpoint stays older than anything an
+   * ant sees or hears about.
+   */
+  public static final int PRIOR = 0;
+
+  /**
+   * Runs of newer cells at least this long are merged with System.arraycopy
+   * rather than cell by cell.
+   */
+  private static final int MIN_COPY_RUN = 8;
+
   /**
    * This will contain the timestep when this tile was last updated.
    */
   private int[][] lastSeenTimeStep; 
 
   /**
-   * These are the walls that have been seen. We will never degrade the value of
-   * these, as walls are not apt to move. 
+   * What each tile held when it was last seen, packed into an int by tile():
+   * the food in the low 16 bits, the ants in the 15 bits above them, and the
+   * sign bit set if the tile is a wall. Keeping the three together instead of
+   * in a layer each makes every known cell cost 8 bytes rather than 13, which
+   * is most of an ant's map, and one of these is kept by every ant.
    */
-  private boolean[][] walls;
+  private int[][] tiles;
 
   /**
-   * This contains how much food was in the tiles when they were last seen. This
-   * will degrade slowly as the timesteps increase.
+   * The most food a packed tile can hold. Bigger piles are recorded as this
+   * much, which is still far more than any ant needs to know about.
    */
-  private int[][] foodAmounts;
+  private static final int MAX_FOOD = 0xFFFF;
 
   /**
-   * This contains how many ants were in the tiles when they were last seen.
-   * This will degrade rapidly, since ants are moving quite frequently.
+   * The most ants a packed tile can hold.
    */
-  private int[][] antAmounts;
+  private static final int MAX_ANTS = 0x7FFF;
+
+  /**
+   * The bit of a packed tile that marks a wall.
+   */
+  private static final int WALL_BIT = 0x80000000;
 
   /**
    * The center in the x direction. Our coordinate system will take an input of
@@ -41,6 +86,25 @@ public class WorldMap{
    */
   private int yCenter;
 
+  /**
+   * The flow fields ants have asked for, by name. Created on first use, since
+   * most maps (like the ones we receive from other ants) never need one.
+   */
+  private HashMap<String, FlowField> flowFields;
+
+  /**
+   * Told whenever a tile we thought was walkable turns out to be a wall.
+   * Created on first use, like the flow fields.
+   */
+  private ArrayList<WallListener> wallListeners;
+
+  /**
+   * Counts the changes to which tiles are walkable, including the map
+   * growing. Searches that remember what they found can compare it to tell
+   * whether the map has changed shape under them.
+   */
+  private int shapeVersion = 0;
+
   /**
    * Constructs a map that starts at 20x20.
    */
@@ -60,17 +124,37 @@ public class WorldMap{
         this.lastSeenTimeStep[x][y] = -1;
       }
     }
-    this.walls = new boolean[size][size];
-    this.foodAmounts = new int[size][size];
-    this.antAmounts = new int[size][size];
+    this.tiles = new int[size][size];
     this.xCenter = size / 2;
     this.yCenter = size / 2;
   }
 
+  /**
+   * Makes a copy of this map that shares nothing with it, so it can be
+   * searched on another thread while this one keeps changing. The copy
+   * starts with the same shape version, but no flow fields or listeners.
+   * @return The copy
+   */
+  public WorldMap snapshot(){
+    int height = this.tiles.length;
+    WorldMap copy = new WorldMap(0);
+    copy.lastSeenTimeStep = new int[height][];
+    copy.tiles = new int[height][];
+    for(int y = 0; y < height; y++){
+      copy.lastSeenTimeStep[y] = this.lastSeenTimeStep[y].clone();
+      copy.tiles[y] = this.tiles[y].clone();
+    }
+    copy.xCenter = this.xCenter;
+    copy.yCenter = this.yCenter;
+    copy.shapeVersion = this.shapeVersion;
+    return copy;
+  }
+
   /**
    * Determines if a given position is next to a position about which we have no
    * information. Such squares are either outside the arrays, or marked with a
-   * -1 in lastSeenTimeStep.
+   * -1 in lastSeenTimeStep. Open squares only known from a checkpoint count
+   * too, since their food is stale until someone sees them again.
    *  @param x The x distance from the anthill
    *  @param y The y distance from the anthill. 
    *  @return Wether or not the position is next to an unknown position.
@@ -79,15 +163,15 @@ public class WorldMap{
     int cx = x + xCenter;
     int cy = y + yCenter;
     if(cx < 0 || cy < 0) return true;
-    if(cx >= this.walls[0].length || cy >= this.walls.length) return true;
+    if(cx >= this.tiles[0].length || cy >= this.tiles.length) return true;
     if(!validPosition(x-1, y)) return true;
     if(!validPosition(x+1, y)) return true;
     if(!validPosition(x, y-1)) return true;
     if(!validPosition(x, y+1)) return true;
-    if(this.lastSeenTimeStep[cy][cx - 1] < 0) return true;
-    if(this.lastSeenTimeStep[cy][cx + 1] < 0) return true;
-    if(this.lastSeenTimeStep[cy - 1][cx] < 0) return true;
-    if(this.lastSeenTimeStep[cy + 1][cx] < 0) return true;
+    if(unexplored(cx - 1, cy)) return true;
+    if(unexplored(cx + 1, cy)) return true;
+    if(unexplored(cx, cy - 1)) return true;
+    if(unexplored(cx, cy + 1)) return true;
 
     return false;
 
@@ -95,7 +179,7 @@ public class WorldMap{
 
   /**
    * Adjusts all the lastSeenTimeSteps to correspond to a new timestep recieved
-   * from another ant. 
+   * from another ant. Cells from a checkpoint keep their PRIOR timestep.
    * @param previousStep What the current time steps are based on.
    * @param newStep what the time steps should be based on.
    */
@@ -103,43 +187,224 @@ public class WorldMap{
     int difference = newStep - previousStep;
     for(int y = 0; y < this.lastSeenTimeStep.length; y++)
       for(int x = 0; x < this.lastSeenTimeStep[y].length; x++)
-        if(this.lastSeenTimeStep[y][x] >= 0)
+        if(this.lastSeenTimeStep[y][x] > PRIOR)
           this.lastSeenTimeStep[y][x] += difference;
   }
 
   /**
    * Takes the information from otherMap, and if the other map's timestep is
    * greater than the current one, we update that square. Otherwise we leave it
-   * as is. 
+   * as is. The arrays are grown at most once up front, and then the rows are
+   * merged in bulk so we never resize in the middle of the merge.
    * @param otherMap The world map that we are mergeng into this one.
    */
   public void mergeInto(WorldMap otherMap){
-    // Loop over every entry in the arrays of the other map
-    for(int y = 0; y < otherMap.lastSeenTimeStep.length; y++){
-      for(int x = 0; x < otherMap.lastSeenTimeStep[y].length; x++){
-        int myx = x - otherMap.xCenter + xCenter;
-        int myy = y - otherMap.yCenter + yCenter;
-        int ts = otherMap.lastSeenTimeStep[y][x];
-
-        // If it is a valid position (within our current arrays), then we want
-        // to check the timestep. Otherwise, we can just call update.
-        if(validPosition(x - otherMap.xCenter, y - otherMap.yCenter)){
-          if(ts > this.lastSeenTimeStep[myy][myx]){
-            updateMap(x - otherMap.xCenter, y - otherMap.yCenter, 
-                      otherMap.walls[y][x],
-                      otherMap.foodAmounts[y][x],
-                      otherMap.foodAmounts[y][x],
-                      ts);
+    AntEvents.MapMerge event = new AntEvents.MapMerge();
+    event.begin();
+
+    int otherHeight = otherMap.lastSeenTimeStep.length;
+    int otherWidth = otherMap.lastSeenTimeStep[0].length;
+
+    // Make sure the whole of the other map is addressable before we start.
+    growToFit(-otherMap.xCenter, -otherMap.yCenter,
+              otherWidth - 1 - otherMap.xCenter,
+              otherHeight - 1 - otherMap.yCenter);
+
+    // The offset from the other map's internal coordinates to ours.
+    int difx = xCenter - otherMap.xCenter;
+    int dify = yCenter - otherMap.yCenter;
+
+    // Find the walls the other map knows about that we thought were open,
+    // before the merge overwrites what we thought.
+    int[] newWalls = null;
+    int newWallCount = 0;
+    if(wallListeners != null){
+      for(int y = 0; y < otherHeight; y++){
+        int[] oSeen = otherMap.lastSeenTimeStep[y];
+        int[] oTiles = otherMap.tiles[y];
+        int[] seen = this.lastSeenTimeStep[y + dify];
+        int[] tileRow = this.tiles[y + dify];
+        for(int x = 0; x < oSeen.length; x++){
+          if(isWall(oTiles[x]) && oSeen[x] > seen[x + difx] && 
+             seen[x + difx] >= 0 && !isWall(tileRow[x + difx])){
+            if(newWalls == null){
+              newWalls = new int[8];
+            }else if(newWallCount == newWalls.length){
+              newWalls = Arrays.copyOf(newWalls, newWallCount * 2);
+            }
+            newWalls[newWallCount++] = x - otherMap.xCenter;
+            newWalls[newWallCount++] = y - otherMap.yCenter;
           }
-        }else{
-          updateMap(x - otherMap.xCenter, y - otherMap.yCenter, 
-                    otherMap.walls[y][x],
-                    otherMap.foodAmounts[y][x],
-                    otherMap.foodAmounts[y][x],
-                    ts);
         }
       }
     }
+
+    int changed = 0;
+    for(int y = 0; y < otherHeight; y++){
+      changed += mergeRow(otherMap.lastSeenTimeStep[y], otherMap.tiles[y],
+                          this.lastSeenTimeStep[y + dify], 
+                          this.tiles[y + dify], difx);
+    }
+
+    finishMerge(event, otherHeight * otherWidth, changed, newWalls,
+                newWallCount);
+  }
+
+  /**
+   * Merges a map straight out of a message written by serializeMap(),
+   * without building the other map first. Like mergeInto(), every cell the
+   * message has newer information about is taken from it, so merging several
+   * messages one after another leaves each cell with the newest of them.
+   * @param in The message, positioned at the start of the map. It is left
+   * positioned just after the map.
+   * @param timeOffset Added to the message's timesteps to bring them in line
+   * with ours. Cells from a checkpoint keep their PRIOR timestep.
+   * @return The number of cells that were changed
+   */
+  public int mergeSerialized(ByteBuffer in, int timeOffset){
+    AntEvents.MapMerge event = new AntEvents.MapMerge();
+    event.begin();
+
+    int otherHeight = in.getInt();
+    int otherWidth = in.getInt();
+    int otherX = in.getInt();
+    int otherY = in.getInt();
+    growToFit(-otherX, -otherY, otherWidth - 1 - otherX,
+              otherHeight - 1 - otherY);
+    int difx = xCenter - otherX;
+    int dify = yCenter - otherY;
+
+    int[] newWalls = null;
+    int newWallCount = 0;
+    boolean reshaped = false;
+    int changed = 0;
+    for(int y = 0; y < otherHeight; y++){
+      int[] seen = this.lastSeenTimeStep[y + dify];
+      int[] tileRow = this.tiles[y + dify];
+      for(int x = difx; x < otherWidth + difx; x++){
+        int oSeen = in.getInt();
+        int oFood = in.getInt();
+        int oAnts = in.getInt();
+        boolean oWall = in.get() != 0;
+        if(oSeen < 0) continue;
+        int when = oSeen == PRIOR ? PRIOR : oSeen + timeOffset;
+        if(when <= seen[x]) continue;
+
+        boolean wasPassable = !isWall(tileRow[x]) && seen[x] >= 0;
+        if(wasPassable == oWall){
+          reshaped = true;
+          if(oWall && wallListeners != null){
+            if(newWalls == null){
+              newWalls = new int[8];
+            }else if(newWallCount == newWalls.length){
+              newWalls = Arrays.copyOf(newWalls, newWallCount * 2);
+            }
+            newWalls[newWallCount++] = x - xCenter;
+            newWalls[newWallCount++] = y + dify - yCenter;
+          }
+        }
+        seen[x] = when;
+        tileRow[x] = tile(oWall, oFood, oAnts);
+        changed++;
+      }
+    }
+    if(reshaped) shapeVersion++;
+
+    finishMerge(event, otherHeight * otherWidth, changed, newWalls,
+                newWallCount);
+    return changed;
+  }
+
+  /**
+   * Tells everything that depends on the map about a merge.
+   * @param event The merge's event, begun before the merge
+   * @param scanned The number of cells of the other map
+   * @param changed The number of cells that were changed
+   * @param newWalls The x and y of each tile we thought was walkable that
+   * turned out to be a wall, or null if there are none
+   * @param newWallCount The number of entries used in newWalls
+   */
+  private void finishMerge(AntEvents.MapMerge event, int scanned, int changed,
+                           int[] newWalls, int newWallCount){
+    // The merge can change the map anywhere, so the flow fields start over.
+    if(changed > 0 && flowFields != null){
+      for(FlowField field : flowFields.values()){
+        field.invalidate();
+      }
+    }
+    for(int i = 0; i < newWallCount; i += 2){
+      for(WallListener listener : wallListeners){
+        listener.wallAdded(newWalls[i], newWalls[i + 1]);
+      }
+    }
+
+    if(AntMetrics.ENABLED){
+      if(changed > 0){
+        AntMetrics.MERGES_APPLIED.increment();
+        AntMetrics.MERGE_CELLS_CHANGED.add(changed);
+      }else{
+        AntMetrics.MERGES_SKIPPED.increment();
+      }
+    }
+
+    event.end();
+    if(event.shouldCommit()){
+      event.cellsScanned = scanned;
+      event.cellsChanged = changed;
+      event.commit();
+    }
+  }
+
+  /**
+   * Merges a single row of another map into one of our rows. Runs of cells
+   * where the other map is newer are copied over in one go.
+   * @param oSeen The other map's timesteps for this row
+   * @param oTiles The other map's packed tiles for this row
+   * @param seen Our timesteps for this row
+   * @param tileRow Our packed tiles for this row
+   * @param difx The offset from the other row's indices to ours
+   * @return The number of cells that were changed
+   */
+  private int mergeRow(int[] oSeen, int[] oTiles, int[] seen, int[] tileRow,
+                       int difx){
+    int changed = 0;
+    int x = 0;
+    while(x < oSeen.length){
+      // Skip over the cells where our information is at least as recent.
+      if(oSeen[x] <= seen[x + difx]){
+        x++;
+        continue;
+      }
+
+      // Find the end of the run of cells where the other map is newer.
+      int start = x;
+      while(x < oSeen.length && oSeen[x] > seen[x + difx]){
+        x++;
+      }
+      int length = x - start;
+      changed += length;
+
+      // The other map's cells are all known, so they are walkable unless
+      // they are walls.
+      for(int i = start; i < x; i++){
+        boolean wasPassable = !isWall(tileRow[i + difx]) && seen[i + difx] >= 0;
+        if(wasPassable == isWall(oTiles[i])){
+          shapeVersion++;
+          break;
+        }
+      }
+
+      if(length >= MIN_COPY_RUN){
+        System.arraycopy(oSeen, start, seen, start + difx, length);
+        System.arraycopy(oTiles, start, tileRow, start + difx, length);
+      }else{
+        for(int i = start; i < x; i++){
+          seen[i + difx] = oSeen[i];
+          tileRow[i + difx] = oTiles[i];
+        }
+      }
+    }
+    return changed;
   }
 
   /**
@@ -147,16 +412,17 @@ public class WorldMap{
    * @param dataWriter The DataOutputStream we are writing to.
    */
   public void serializeMap(DataOutputStream dataWriter) throws IOException{
-    dataWriter.writeInt(this.walls.length);
-    dataWriter.writeInt(this.walls[0].length);
+    dataWriter.writeInt(this.tiles.length);
+    dataWriter.writeInt(this.tiles[0].length);
     dataWriter.writeInt(this.xCenter);
     dataWriter.writeInt(this.yCenter);
     for(int y = 0; y < this.lastSeenTimeStep.length; y++){
       for(int x = 0; x < this.lastSeenTimeStep[y].length; x++){
+        int tile = this.tiles[y][x];
         dataWriter.writeInt(this.lastSeenTimeStep[y][x]);
-        dataWriter.writeInt(this.foodAmounts[y][x]);
-        dataWriter.writeInt(this.antAmounts[y][x]);
-        dataWriter.writeBoolean(this.walls[y][x]);
+        dataWriter.writeInt(foodOf(tile));
+        dataWriter.writeInt(antsOf(tile));
+        dataWriter.writeBoolean(isWall(tile));
       }
     }
   }
@@ -172,17 +438,141 @@ public class WorldMap{
     this.xCenter = dataReader.readInt();
     this.yCenter = dataReader.readInt();
     this.lastSeenTimeStep = new int[height][width];
-    this.walls = new boolean[height][width];
-    this.foodAmounts = new int[height][width];
-    this.antAmounts = new int[height][width];
+    this.tiles = new int[height][width];
+    this.flowFields = null;
+    this.shapeVersion++;
     for(int y = 0; y < this.lastSeenTimeStep.length; y++){
       for(int x = 0; x < this.lastSeenTimeStep[y].length; x++){
         this.lastSeenTimeStep[y][x] = dataReader.readInt();
-        this.foodAmounts[y][x] = dataReader.readInt();
-        this.antAmounts[y][x] = dataReader.readInt();
-        this.walls[y][x] = dataReader.readBoolean();
+        int food = dataReader.readInt();
+        int ants = dataReader.readInt();
+        this.tiles[y][x] = tile(dataReader.readBoolean(), food, ants);
+      }
+    }
+  }
+
+  /**
+   * Writes what this map knows about the world to a checkpoint, which a
+   * later game on the same world can start from. The file holds MAGIC,
+   * VERSION, the height, width and center, one byte per cell saying wether
+   * it is unknown, open or a wall, and then the index and amount of every
+   * cell with food. Times and ants aren't kept, since they will be out of
+   * date by the time the checkpoint is read.
+   * @param file The file to write
+   */
+  public void writeCheckpoint(File file) throws IOException{
+    int height = this.tiles.length;
+    int width = this.tiles[0].length;
+    int foodCells = 0;
+    for(int y = 0; y < height; y++){
+      for(int x = 0; x < width; x++){
+        if(this.lastSeenTimeStep[y][x] >= 0 && foodOf(this.tiles[y][x]) > 0){
+          foodCells++;
+        }
+      }
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(28 + height * width + 
+                                            8 * foodCells);
+    buffer.putInt(CHECKPOINT_MAGIC);
+    buffer.putInt(CHECKPOINT_VERSION);
+    buffer.putInt(height);
+    buffer.putInt(width);
+    buffer.putInt(this.xCenter);
+    buffer.putInt(this.yCenter);
+    for(int y = 0; y < height; y++){
+      for(int x = 0; x < width; x++){
+        if(this.lastSeenTimeStep[y][x] < 0){
+          buffer.put(UNKNOWN);
+        }else{
+          buffer.put(isWall(this.tiles[y][x]) ? WALL : OPEN);
+        }
+      }
+    }
+    buffer.putInt(foodCells);
+    for(int y = 0; y < height; y++){
+      for(int x = 0; x < width; x++){
+        if(this.lastSeenTimeStep[y][x] >= 0 && foodOf(this.tiles[y][x]) > 0){
+          buffer.putInt(y * width + x);
+          buffer.putInt(foodOf(this.tiles[y][x]));
+        }
+      }
+    }
+    buffer.flip();
+
+    FileChannel channel = new FileOutputStream(file).getChannel();
+    try{
+      while(buffer.hasRemaining()){
+        channel.write(buffer);
+      }
+    }finally{
+      channel.close();
+    }
+  }
+
+  /**
+   * Reads a checkpoint written by writeCheckpoint() into a new map, to give
+   * an ant a head start on a world that has been played before. Every cell
+   * in the checkpoint is marked as seen at the PRIOR timestep, older than
+   * anything the ant will see or hear about. Walls are taken as they are,
+   * since walls don't move, but the food is the oldest information the ant
+   * has, and is replaced as soon as the ant or another ant sees the tile
+   * again.
+   * @param file The checkpoint
+   * @return The map
+   * @throws IOException If the file can't be read, or doesn't hold a whole
+   * checkpoint
+   */
+  public static WorldMap readCheckpoint(File file) throws IOException{
+    ByteBuffer buffer;
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+    try{
+      FileChannel channel = in.getChannel();
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }finally{
+      in.close();
+    }
+    if(buffer.remaining() < 24 || buffer.getInt() != CHECKPOINT_MAGIC){
+      throw new IOException(file + " is not a map checkpoint");
+    }
+    if(buffer.getInt() != CHECKPOINT_VERSION){
+      throw new IOException(file + " has an unknown version");
+    }
+
+    int height = buffer.getInt();
+    int width = buffer.getInt();
+    int xCenter = buffer.getInt();
+    int yCenter = buffer.getInt();
+    if(height <= 0 || width <= 0 || xCenter < 0 || xCenter >= width ||
+       yCenter < 0 || yCenter >= height || 
+       (long)height * width + 4 > buffer.remaining()){
+      throw new IOException(file + " has a malformed header");
+    }
+    WorldMap map = new WorldMap(0);
+    map.lastSeenTimeStep = new int[height][width];
+    map.tiles = new int[height][width];
+    map.xCenter = xCenter;
+    map.yCenter = yCenter;
+    for(int y = 0; y < height; y++){
+      for(int x = 0; x < width; x++){
+        byte cell = buffer.get();
+        map.lastSeenTimeStep[y][x] = cell == UNKNOWN ? -1 : PRIOR;
+        map.tiles[y][x] = cell == WALL ? WALL_BIT : 0;
+      }
+    }
+    int foodCells = buffer.getInt();
+    if(foodCells < 0 || 8L * foodCells != buffer.remaining()){
+      throw new IOException(file + " is truncated");
+    }
+    for(int i = 0; i < foodCells; i++){
+      int cell = buffer.getInt();
+      if(cell < 0 || cell >= height * width){
+        throw new IOException(file + " has food outside the map");
       }
+      int[] row = map.tiles[cell / width];
+      row[cell % width] = tile(isWall(row[cell % width]), buffer.getInt(), 0);
     }
+    return map;
   }
 
   /**
@@ -220,96 +610,212 @@ public class WorldMap{
 
     // If a coordinate is outside the range addressible, we must resize
     if(xcoord < 0 || ycoord < 0 || 
-       ycoord >= this.walls.length || xcoord >= this.walls[0].length){
-
-      // Double the size of the board. 
-      int size = this.walls.length * 2;
-      
-      // Create our new arrays to hold the bigger data
-      boolean[][] newWalls = new boolean[size][size];
-      int[][] newFood = new int[size][size];
-      int[][] newAnts = new int[size][size];
-      int[][] newSeen = new int[size][size];
-
-      // Initialize seen positions to -1
-      for(int yy = 0; yy < newSeen.length; yy++){
-        for(int xx = 0; xx < newSeen[yy].length; xx++){
-          newSeen[yy][xx] = -1;
-        }
-      }
+       ycoord >= this.tiles.length || xcoord >= this.tiles[0].length){
+      growToFit(x, y, x, y);
+      xcoord = x + xCenter;
+      ycoord = y + yCenter;
+    }
+
+    boolean wasPassable = !isWall(this.tiles[ycoord][xcoord]) && 
+                          this.lastSeenTimeStep[ycoord][xcoord] >= 0;
 
-      // Calculate the estimated new center.
-      int newx = size/2;
-      int newy = size/2;
-
-      // Calculate the difference between the center, for easier copying.
-      int difx = newx - this.xCenter;
-      int dify = newy - this.yCenter;
-
-      // Copy data from old arrays
-      for(int yp = 0; yp < this.walls.length; yp++){
-        boolean[] wallRow = this.walls[yp];
-        int[] foodRow = this.foodAmounts[yp];
-        int[] antRow = this.antAmounts[yp];
-        int[] lstRow = this.lastSeenTimeStep[yp];
-        for(int xp = 0; xp < wallRow.length; xp++){
-          newWalls[yp + dify][xp + difx] = wallRow[xp];
-          newFood[yp + dify][xp + difx] = foodRow[xp];
-          newAnts[yp + dify][xp + difx] = antRow[xp];
-          newSeen[yp + dify][xp + difx] = lstRow[xp];
+    // Set the values of the world.
+    this.tiles[ycoord][xcoord] = tile(wall, food, ants);
+    this.lastSeenTimeStep[ycoord][xcoord] = timestep;
+
+    if(wasPassable == wall) shapeVersion++;
+
+    // Repair the flow fields where the way through this tile changed.
+    if(flowFields != null && wasPassable == wall){
+      for(FlowField field : flowFields.values()){
+        if(wall){
+          field.wallAdded(this, x, y);
+        }else{
+          field.cellOpened(this, x, y);
         }
       }
+    }
+    if(wallListeners != null && wasPassable && wall){
+      for(WallListener listener : wallListeners){
+        listener.wallAdded(x, y);
+      }
+    }
+  }
 
-      // Reassign variables to the new values
-      this.xCenter = newx;
-      this.yCenter = newy;
-      this.walls = newWalls;
-      this.foodAmounts = newFood;
-      this.antAmounts = newAnts;
-      this.lastSeenTimeStep = newSeen;
-      
-      // Try to update again.
-      this.updateMap(x, y, wall, food, ants, timestep);
-    }else{
-      // Set the values of the world.
-      this.walls[ycoord][xcoord] = wall;
-      this.foodAmounts[ycoord][xcoord] = food;
-      this.antAmounts[ycoord][xcoord] = ants;
-      this.lastSeenTimeStep[ycoord][xcoord] = timestep;
+  /**
+   * Asks to be told whenever a tile we thought was walkable turns out to be a
+   * wall, either by seeing it or by merging in another ant's map.
+   * @param listener The listener to tell
+   */
+  public void addWallListener(WallListener listener){
+    if(wallListeners == null){
+      wallListeners = new ArrayList<WallListener>(1);
     }
+    wallListeners.add(listener);
   }
 
   /**
-   * Analyze the current world and decides possible moves for our ant to take.
+   * Stops telling a listener about new walls.
+   * @param listener The listener to forget
+   */
+  public void removeWallListener(WallListener listener){
+    if(wallListeners != null) wallListeners.remove(listener);
+  }
+
+  /**
+   * Returns the next move towards the closest goal of a named flow field. The
+   * field is built the first time it is asked for, and kept up to date as the
+   * map changes, so following it costs a single lookup per step.
+   * @param name Identifies the field
+   * @param goal The destinations of the field, used if it doesn't exist yet
    * @param x The x distance from the anthill
-   * @param y the y distance from the anthill
-   * @param hasFood True if the ant is currently carrying food
-   * @return An array of possible moves for the ant
+   * @param y The y distance from the anthill
+   * @return The move to make, or null if the position is a goal or no goal
+   * can be reached from it
    */
-  public Move[] getPossibleMoves(int x, int y, boolean hasFood){
-    int xc = x + xCenter;
-    int yc = y + yCenter;
+  public Action flowStep(String name, SearchGoal goal, int x, int y){
+    return flowField(name, goal).step(this, x, y);
+  }
+
+  /**
+   * Returns a named flow field, creating it if it doesn't exist yet.
+   * @param name Identifies the field
+   * @param goal The destinations of the field, used if it doesn't exist yet
+   */
+  public FlowField flowField(String name, SearchGoal goal){
+    if(flowFields == null) flowFields = new HashMap<String, FlowField>();
+    FlowField field = flowFields.get(name);
+    if(field == null){
+      field = new FlowField(goal);
+      flowFields.put(name, field);
+    }
+    return field;
+  }
+
+  /**
+   * Forces a named flow field to be rebuilt, for when its goals have changed.
+   * @param name Identifies the field
+   */
+  public void invalidateFlowField(String name){
+    if(flowFields == null) return;
+    FlowField field = flowFields.get(name);
+    if(field != null) field.invalidate();
+  }
+
+  /**
+   * Grows the internal arrays so that every position within the given bounds
+   * is addressable. The board keeps doubling in size until everything fits,
+   * so this allocates and copies at most once per call.
+   * @param minx The smallest x distance from the anthill that must fit
+   * @param miny The smallest y distance from the anthill that must fit
+   * @param maxx The largest x distance from the anthill that must fit
+   * @param maxy The largest y distance from the anthill that must fit
+   */
+  private void growToFit(int minx, int miny, int maxx, int maxy){
+    int height = this.tiles.length;
+    int width = this.tiles[0].length;
+    if(minx + xCenter >= 0 && miny + yCenter >= 0 &&
+       maxx + xCenter < width && maxy + yCenter < height){
+      return;
+    }
+
+    AntEvents.MapResize event = new AntEvents.MapResize();
+    event.begin();
+
+    // The new board also has to hold everything we already know.
+    minx = Math.min(minx, -xCenter);
+    miny = Math.min(miny, -yCenter);
+    maxx = Math.max(maxx, width - 1 - xCenter);
+    maxy = Math.max(maxy, height - 1 - yCenter);
+
+    // Double the size of the board until the bounds fit around the center.
+    int size = Math.max(height, width);
+    do{
+      size *= 2;
+    }while(size / 2 < -minx || size / 2 < -miny ||
+           size - size / 2 <= maxx || size - size / 2 <= maxy);
 
-    ArrayList<Move> retval = new ArrayList<Move>();
+    // Create our new arrays to hold the bigger data
+    int[][] newTiles = new int[size][size];
+    int[][] newSeen = new int[size][size];
 
-    if(validMove(Action.move(Direction.NORTH), x, y, hasFood)){
-      retval.add(new Move(Action.move(Direction.NORTH), 
-                          new Position(x, y-1)));
+    // Initialize seen positions to -1
+    for(int yy = 0; yy < newSeen.length; yy++){
+      Arrays.fill(newSeen[yy], -1);
     }
-    if(validMove(Action.move(Direction.EAST), x, y, hasFood)){
-      retval.add(new Move(Action.move(Direction.EAST), 
-                          new Position(x+1, y)));
+
+    // Calculate the new center.
+    int newx = size/2;
+    int newy = size/2;
+
+    // Calculate the difference between the center, for easier copying.
+    int difx = newx - this.xCenter;
+    int dify = newy - this.yCenter;
+
+    // Copy data from old arrays
+    for(int yp = 0; yp < height; yp++){
+      System.arraycopy(this.tiles[yp], 0, newTiles[yp + dify], difx, width);
+      System.arraycopy(this.lastSeenTimeStep[yp], 0, newSeen[yp + dify], difx,
+                       width);
     }
-    if(validMove(Action.move(Direction.SOUTH), x, y, hasFood)){
-      retval.add(new Move(Action.move(Direction.SOUTH), 
-                          new Position(x, y+1)));
+
+    if(AntMetrics.ENABLED){
+      AntMetrics.MAP_RESIZES.increment();
+      AntMetrics.MAP_CELLS_COPIED.add((long)height * width);
     }
-    if(validMove(Action.move(Direction.WEST), x, y, hasFood)){
-      retval.add(new Move(Action.move(Direction.WEST), 
-                          new Position(x-1, y)));
+
+    // Reassign variables to the new values
+    this.xCenter = newx;
+    this.yCenter = newy;
+    this.tiles = newTiles;
+    this.lastSeenTimeStep = newSeen;
+    this.shapeVersion++;
+
+    event.end();
+    if(event.shouldCommit()){
+      event.oldSize = Math.max(height, width);
+      event.newSize = size;
+      event.commit();
     }
+  }
 
-    return retval.toArray(new Move[0]);
+  /**
+   * Analyze the current world and decides possible moves for our ant to take.
+   * @param x The x distance from the anthill
+   * @param y the y distance from the anthill
+   * @param hasFood True if the ant is currently carrying food
+   * @return An array of possible moves for the ant
+   */
+  public Move[] getPossibleMoves(int x, int y, boolean hasFood){
+    int[] packed = new int[4];
+    int count = getPossibleMoves(x, y, hasFood, packed);
+    Move[] retval = new Move[count];
+    for(int i = 0; i < count; i++){
+      retval[i] = new Move(Move.unpackAction(packed[i]),
+                           new Position(Move.unpackX(packed[i]),
+                                        Move.unpackY(packed[i])));
+    }
+    return retval;
+  }
+
+  /**
+   * Decides the possible moves for our ant to take without making any
+   * objects. The moves are written as packed moves (see Move.pack()) in
+   * Direction.values() order.
+   * @param x The x distance from the anthill
+   * @param y the y distance from the anthill
+   * @param hasFood True if the ant is currently carrying food
+   * @param moves Where the moves are written, with room for at least four
+   * @return The number of moves written
+   */
+  public int getPossibleMoves(int x, int y, boolean hasFood, int[] moves){
+    if(!validPosition(x, y)) return 0;
+    int count = 0;
+    if(isPassable(x, y-1)) moves[count++] = Move.pack(0, x, y-1);
+    if(isPassable(x+1, y)) moves[count++] = Move.pack(1, x+1, y);
+    if(isPassable(x, y+1)) moves[count++] = Move.pack(2, x, y+1);
+    if(isPassable(x-1, y)) moves[count++] = Move.pack(3, x-1, y);
+    return count;
   }
 
   /**
@@ -320,12 +826,166 @@ public class WorldMap{
    */
   public int getFood(int x, int y){
     if(validPosition(x,y)){
-      return this.foodAmounts[y + yCenter][x + xCenter];
+      return foodOf(this.tiles[y + yCenter][x + xCenter]);
+    }else{
+      return 0;
+    }
+  }
+
+  /**
+   * Adds up the food on every known tile.
+   */
+  public int countFood(){
+    int food = 0;
+    for(int y = 0; y < this.tiles.length; y++){
+      for(int x = 0; x < this.tiles[y].length; x++){
+        food += foodOf(this.tiles[y][x]);
+      }
+    }
+    return food;
+  }
+
+  /**
+   * Decides if a square, in internal coordinates, still needs exploring:
+   * either nothing is known about it, or it is open and only known from a
+   * checkpoint. Walls from a checkpoint are trusted.
+   */
+  private boolean unexplored(int cx, int cy){
+    int seen = this.lastSeenTimeStep[cy][cx];
+    return seen < 0 || (seen == PRIOR && !isWall(this.tiles[cy][cx]));
+  }
+
+  /**
+   * Counts the known, walkable tiles that are next to a tile we know nothing
+   * about, or only know from a checkpoint. These are where the unexplored
+   * parts of the world start.
+   */
+  public int countFrontier(){
+    int frontier = 0;
+    for(int y = 0; y < this.tiles.length; y++){
+      for(int x = 0; x < this.tiles[y].length; x++){
+        if(this.lastSeenTimeStep[y][x] >= 0 && !isWall(this.tiles[y][x]) &&
+           nextToUnknown(x - xCenter, y - yCenter)){
+          frontier++;
+        }
+      }
+    }
+    return frontier;
+  }
+
+  /**
+   * Returns the number of ants at the given coordinates when it was last seen,
+   * not counting the ant that saw them.
+   * @param x The x distance from the anthill
+   * @param y the y distance from the anthill
+   * @return the number of ants at a given square
+   */
+  public int getAnts(int x, int y){
+    if(validPosition(x,y)){
+      return antsOf(this.tiles[y + yCenter][x + xCenter]);
     }else{
       return 0;
     }
   }
 
+  /**
+   * Returns the timestep the given coordinates were last seen at.
+   * @param x The x distance from the anthill
+   * @param y the y distance from the anthill
+   * @return the timestep, or -1 if the square has never been seen
+   */
+  public int getLastSeen(int x, int y){
+    if(validPosition(x,y)){
+      return this.lastSeenTimeStep[y + yCenter][x + xCenter];
+    }else{
+      return -1;
+    }
+  }
+
+  /**
+   * Returns wether or not an ant can walk onto the given position. Positions
+   * we know nothing about are not walkable, since we won't plan into them.
+   * @param x The x distance from the anthill
+   * @param y the y distance from the anthill
+   * @return True if the position is known and is not a wall
+   */
+  public boolean isPassable(int x, int y){
+    if(!validPosition(x, y)) return false;
+    return !isWall(this.tiles[y + yCenter][x + xCenter]) && 
+           this.lastSeenTimeStep[y + yCenter][x + xCenter] >= 0;
+  }
+
+  /**
+   * Returns a number that changes whenever a tile becomes walkable or stops
+   * being walkable, or the map grows.
+   */
+  public int getShapeVersion(){
+    return shapeVersion;
+  }
+
+  /**
+   * Returns the smallest x distance from the anthill the arrays can hold.
+   */
+  public int getMinX(){
+    return -xCenter;
+  }
+
+  /**
+   * Returns the smallest y distance from the anthill the arrays can hold.
+   */
+  public int getMinY(){
+    return -yCenter;
+  }
+
+  /**
+   * Returns the number of columns the arrays hold.
+   */
+  public int getWidth(){
+    return tiles[0].length;
+  }
+
+  /**
+   * Returns the number of rows the arrays hold.
+   */
+  public int getHeight(){
+    return tiles.length;
+  }
+
+  /**
+   * Packs what was seen on a tile into an int. Food and ants beyond what a
+   * packed tile can hold are recorded as the most it can hold.
+   * @param wall True if the tile is a wall
+   * @param food The amount of food on the tile
+   * @param ants The number of ants on the tile
+   * @return The packed tile
+   */
+  private static int tile(boolean wall, int food, int ants){
+    food = Math.max(0, Math.min(food, MAX_FOOD));
+    ants = Math.max(0, Math.min(ants, MAX_ANTS));
+    return (wall ? WALL_BIT : 0) | ants << 16 | food;
+  }
+
+  /**
+   * Returns wether a packed tile is a wall.
+   */
+  private static boolean isWall(int tile){
+    return tile < 0;
+  }
+
+  /**
+   * Returns the food on a packed tile.
+   */
+  private static int foodOf(int tile){
+    return tile & MAX_FOOD;
+  }
+
+  /**
+   * Returns the ants on a packed tile.
+   */
+  private static int antsOf(int tile){
+    return (tile >>> 16) & MAX_ANTS;
+  }
+
   /**
    * Returns wether or not the coordinates are within the current squares. This
    * keeps us from addressing outside the arrays.
@@ -339,8 +999,8 @@ public class WorldMap{
 
     if(cx < 0) return false;
     if(cy < 0) return false;
-    if(cx >= walls[0].length) return false;
-    if(cy >= walls.length) return false;
+    if(cx >= tiles[0].length) return false;
+    if(cy >= tiles.length) return false;
     return true;
   }
 
@@ -362,32 +1022,32 @@ public class WorldMap{
     if(a == Action.HALT){
       return true;
     }else if(a == Action.GATHER){
-      return this.foodAmounts[cy][cx] > 0 && !hasFood;
+      return foodOf(this.tiles[cy][cx]) > 0 && !hasFood;
     }else if(a == Action.DROP_OFF){
       return hasFood;
     }else{
       switch(a.getDirection()){
         case NORTH:
           if(validPosition(x, y-1)){
-            return (!this.walls[cy - 1][cx] 
+            return (!isWall(this.tiles[cy - 1][cx]) 
                     && this.lastSeenTimeStep[cy-1][cx] >= 0);
           }
           return false;
         case EAST:
           if(validPosition(x+1, y)){
-            return (!this.walls[cy][cx + 1]
+            return (!isWall(this.tiles[cy][cx + 1])
                     && this.lastSeenTimeStep[cy][cx+1] >= 0);
           }
           return false;
         case SOUTH:
           if(validPosition(x, y+1)){
-            return (!this.walls[cy + 1][cx]
+            return (!isWall(this.tiles[cy + 1][cx])
                     && this.lastSeenTimeStep[cy+1][cx] >= 0);
           }
           return false;
         case WEST:
           if(validPosition(x-1, y)){
-            return (!this.walls[cy][cx - 1]
+            return (!isWall(this.tiles[cy][cx - 1])
                     && this.lastSeenTimeStep[cy][cx-1] >= 0);
           }
           return false;
@@ -402,48 +1062,155 @@ public class WorldMap{
    * an ant's brain
    */
   public String toString(){
-    String retval = "";
-    int minx = 999, miny = 999;
-    int maxx = -999, maxy = -999;
-
-    // Find the minimum/maximum x and y values.
-    for(int y = 0; y < this.walls.length; y++){
-      for(int x = 0; x < this.walls[y].length; x++){
-        if(this.lastSeenTimeStep[y][x] >= 0){
-          minx = Math.min(minx, x);
-          miny = Math.min(miny, y);
-          maxx = Math.max(maxx, x);
-          maxy = Math.max(maxy, y);
+    StringBuilder retval = new StringBuilder();
+    try{
+      render(retval);
+    }catch(IOException e){
+      // A StringBuilder never throws.
+    }
+    return retval.toString();
+  }
+
+  /**
+   * Draws everything the map knows about, two characters and a bar per tile
+   * and a line per row, straight to the output.
+   * @param out Where the map is drawn
+   */
+  public void render(Appendable out) throws IOException{
+    int[] bounds = knownBounds();
+    if(bounds == null) return;
+    render(out, bounds[0], bounds[1], bounds[2], bounds[3], 1);
+  }
+
+  /**
+   * Draws part of the map straight to the output, without building it up in
+   * memory first. Every block of scale by scale tiles is drawn as a single
+   * tile: "AH" if it holds the anthill, "##" if it is all walls, the food in
+   * it (up to 99) if there is any, "??" if none of it is known, and blanks
+   * otherwise.
+   * @param out Where the map is drawn
+   * @param minx The smallest x distance from the anthill to draw
+   * @param miny The smallest y distance from the anthill to draw
+   * @param maxx The largest x distance from the anthill to draw
+   * @param maxy The largest y distance from the anthill to draw
+   * @param scale The width and height of the block drawn as each tile
+   */
+  public void render(Appendable out, int minx, int miny, int maxx, int maxy,
+                     int scale) throws IOException{
+    for(int by = miny; by <= maxy; by += scale){
+      for(int bx = minx; bx <= maxx; bx += scale){
+        int bw = Math.min(scale, maxx - bx + 1);
+        int bh = Math.min(scale, maxy - by + 1);
+        int food = 0;
+        boolean known = false, open = false;
+        for(int y = by; y < by + bh; y++){
+          for(int x = bx; x < bx + bw; x++){
+            if(getLastSeen(x, y) < 0) continue;
+            known = true;
+            int tile = this.tiles[y + yCenter][x + xCenter];
+            if(!isWall(tile)) open = true;
+            food += foodOf(tile);
+          }
+        }
+
+        if(bx <= 0 && 0 < bx + bw && by <= 0 && 0 < by + bh){
+          out.append("AH");
+        }else if(known && !open){
+          out.append("##");
+        }else if(food > 0){
+          food = Math.min(food, 99);
+          out.append((char)('0' + food / 10)).append((char)('0' + food % 10));
+        }else if(!known){
+          out.append("??");
+        }else{
+          out.append("  ");
         }
+        out.append('|');
       }
+      out.append('\n');
     }
+  }
 
-    // Draw the map within the min/max x/y values
-    for(int y = miny; y <= maxy; y++){
-      int[] seenRow = this.lastSeenTimeStep[y];
-      boolean[] wallRow = this.walls[y];
-      int[] foodRow = this.foodAmounts[y];
-      int[] antRow = this.antAmounts[y];
-      for(int x = minx; x <= maxx; x++){
-        int seen = seenRow[x];
-        boolean wall = wallRow[x];
-        int food = foodRow[x];
-        int ant = antRow[x];
-        if(x == xCenter && y == yCenter){
-          retval += "AH";
-        }else if(wall){
-          retval += "##";
+  /**
+   * Draws part of the map as a binary PPM image, a pixel per block of scale
+   * by scale tiles, for maps too big to read as text. The anthill is red,
+   * food green (brighter for more), open ground white, walls black and
+   * unknown tiles grey. The rows are written one at a time.
+   * @param out Where the image is written
+   * @param minx The smallest x distance from the anthill to draw
+   * @param miny The smallest y distance from the anthill to draw
+   * @param maxx The largest x distance from the anthill to draw
+   * @param maxy The largest y distance from the anthill to draw
+   * @param scale The width and height of the block drawn as each pixel
+   */
+  public void writePpm(OutputStream out, int minx, int miny, int maxx,
+                       int maxy, int scale) throws IOException{
+    int width = (maxx - minx) / scale + 1;
+    int height = (maxy - miny) / scale + 1;
+    out.write(("P6\n" + width + " " + height + "\n255\n")
+              .getBytes(StandardCharsets.US_ASCII));
+
+    byte[] row = new byte[width * 3];
+    for(int by = miny; by <= maxy; by += scale){
+      int i = 0;
+      for(int bx = minx; bx <= maxx; bx += scale){
+        int bw = Math.min(scale, maxx - bx + 1);
+        int bh = Math.min(scale, maxy - by + 1);
+        int food = 0, open = 0, walls = 0;
+        for(int y = by; y < by + bh; y++){
+          for(int x = bx; x < bx + bw; x++){
+            if(getLastSeen(x, y) < 0) continue;
+            int tile = this.tiles[y + yCenter][x + xCenter];
+            if(isWall(tile)){
+              walls++;
+            }else{
+              open++;
+            }
+            food += foodOf(tile);
+          }
+        }
+
+        int r, g, b;
+        if(bx <= 0 && 0 < bx + bw && by <= 0 && 0 < by + bh){
+          r = 255; g = 0; b = 0;
         }else if(food > 0){
-          retval += String.format("%02d", food);
-        }else if(seen < 0){
-          retval += "??";
+          r = 0; g = 127 + Math.min(food, 32) * 4; b = 0;
+        }else if(open + walls == 0){
+          r = g = b = 128;
         }else{
-          retval += "  ";
+          // Shade from white to black by the share of the block that is wall.
+          r = g = b = 255 * open / (open + walls);
         }
-        retval += "|";
+        row[i++] = (byte)r;
+        row[i++] = (byte)g;
+        row[i++] = (byte)b;
       }
-      retval += '\n';
+      out.write(row, 0, i);
     }
-    return retval;
+    out.flush();
+  }
+
+  /**
+   * Finds the smallest box around everything the map knows about.
+   * @return The smallest and largest x and y distances from the anthill, or
+   * null if nothing is known
+   */
+  public int[] knownBounds(){
+    int minx = Integer.MAX_VALUE, miny = Integer.MAX_VALUE;
+    int maxx = Integer.MIN_VALUE, maxy = Integer.MIN_VALUE;
+    for(int y = 0; y < this.lastSeenTimeStep.length; y++){
+      int[] seenRow = this.lastSeenTimeStep[y];
+      for(int x = 0; x < seenRow.length; x++){
+        if(seenRow[x] >= 0){
+          minx = Math.min(minx, x);
+          miny = Math.min(miny, y);
+          maxx = Math.max(maxx, x);
+          maxy = Math.max(maxy, y);
+        }
+      }
+    }
+    if(maxx < minx) return null;
+    return new int[]{minx - xCenter, miny - yCenter,
+                     maxx - xCenter, maxy - yCenter};
   }
 }